@@ -0,0 +1,82 @@
+package com.taotao.common.job;
+
+import com.taotao.common.job.impl.JobRedisCacheKey;
+
+/**
+ * 功能描述：一次定时任务门阀持有记录
+ * <p/>
+ * ownerToken为本次加锁写入的唯一值，只有持有者才能续期、释放门阀；
+ * fencingToken每次加锁单调递增，任务写入外部存储时携带该值，存储端拒绝小于已见最大值的写入，
+ * 即可防止门阀过期后仍在执行的旧任务覆盖新任务的结果。
+ * 门阀续期失败、被其他节点持有或超过租约时间后isValid返回false，长任务应在每批处理前检查并及时停止。
+ */
+public final class JobLock {
+
+    private final JobRedisCacheKey jobRedisCacheKey;
+
+    private final String ownerToken;
+
+    private final long fencingToken;
+
+    /**
+     * 门阀有效截止时间（System.nanoTime），每次续期成功后延长
+     */
+    private volatile long validUntilNanos;
+
+    /**
+     * 门阀已失去（被其他节点持有或已释放）
+     */
+    private volatile boolean lost;
+
+    /**
+     * @param validUntilNanos 门阀有效截止时间（System.nanoTime），按加锁请求发出前的时间计算
+     */
+    public JobLock(JobRedisCacheKey jobRedisCacheKey, String ownerToken, long fencingToken, long validUntilNanos) {
+        this.jobRedisCacheKey = jobRedisCacheKey;
+        this.ownerToken = ownerToken;
+        this.fencingToken = fencingToken;
+        this.validUntilNanos = validUntilNanos;
+    }
+
+    public JobRedisCacheKey getJobRedisCacheKey() {
+        return jobRedisCacheKey;
+    }
+
+    public String getOwnerToken() {
+        return ownerToken;
+    }
+
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    /**
+     * @return 门阀未失去且未超过有效截止时间时返回true
+     */
+    public boolean isValid() {
+        return !lost && System.nanoTime() - validUntilNanos < 0;
+    }
+
+    /**
+     * 续期成功后延长有效截止时间，由门阀实现调用
+     *
+     * @param validUntilNanos 按续期请求发出前的时间计算的截止时间
+     */
+    public void renewedUntil(long validUntilNanos) {
+        if (!lost) {
+            this.validUntilNanos = validUntilNanos;
+        }
+    }
+
+    /**
+     * 门阀已失去或已释放，由门阀实现调用，之后isValid始终返回false
+     */
+    public void invalidate() {
+        lost = true;
+    }
+
+    @Override
+    public String toString() {
+        return "JobLock{" + jobRedisCacheKey + ", ownerToken=" + ownerToken + ", fencingToken=" + fencingToken + "}";
+    }
+}
@@ -2,6 +2,10 @@ package com.taotao.common.job;
 
 import com.google.common.base.Function;
 import com.taotao.common.job.impl.JobRedisCacheKey;
+import com.taotao.common.util.RedisWorkQueue;
+
+import java.util.List;
+import java.util.Set;
 //import com.oneplus.wms.common.job.JobRedisCacheKey;
 
 /**
@@ -36,5 +40,41 @@ public interface JobSwitchSupporter {
      */
     public <F, T> T supporter(JobRedisCacheKey jobRedisCacheKey, Function<F, T> execute, F input);
 
+    /**
+     * 定时任务开发门阀选择器,回调入参为本次门阀持有记录,任务可以使用其中的fencing token保护外部写入
+     *
+     * @param jobRedisCacheKey cache key
+     * @param execute          执行任务内容Function
+     * @param <T>              Function 回调返回类型
+     * @return 未获得门阀或执行异常时返回null
+     */
+    public <T> T fencedSupporter(JobRedisCacheKey jobRedisCacheKey, Function<JobLock, T> execute);
+
+    /**
+     * 分区定时任务选择器,各节点按存活成员均分分区,回调入参为本节点本次获得的分区号(0到partitions-1);
+     * 所有节点共同执行,不受领导者模式影响
+     *
+     * @param jobRedisCacheKey cache key
+     * @param partitions       分区总数,所有节点须一致
+     * @param execute          执行任务内容Function
+     * @param <T>              Function 回调返回类型
+     * @return 未获得分区或执行异常时返回null
+     */
+    public <T> T partitionedSupporter(JobRedisCacheKey jobRedisCacheKey, int partitions, Function<Set<Integer>, T> execute);
+
+    /**
+     * 队列定时任务选择器,获得门阀的节点调用producer把任务拆分为分片放入队列(上一批分片尚未全部确认时不再拆分),
+     * 随后所有节点从队列批量领取分片调用consumer处理,consumer返回true即确认,否则可见超时后重新投递;
+     * 启用领导者模式时由领导者拆分,处理分片仍由所有节点分担
+     *
+     * @param jobRedisCacheKey cache key
+     * @param queue            分片队列
+     * @param producer         拆分任务Function,入参为本次门阀持有记录
+     * @param consumer         处理单个分片Function,须幂等
+     * @return 本节点本次确认的分片数量
+     */
+    public int queueSupporter(JobRedisCacheKey jobRedisCacheKey, RedisWorkQueue queue,
+                              Function<JobLock, List<String>> producer, Function<String, Boolean> consumer);
+
 
 }
@@ -1,16 +1,63 @@
 package com.taotao.common.job.impl;
 
 import com.google.common.base.Function;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 //import com.oneplus.wms.common.JobSwitchSupporter;
 //import com.oneplus.wms.common.utils.RedisCache;
+import com.taotao.common.job.JobLock;
 import com.taotao.common.job.JobSwitchSupporter;
 import com.taotao.common.util.RedisCache;
+import com.taotao.common.util.RedisWorkQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * 功能描述：支持定时任务开关门阀接口实现
+ * <p/>
+ * leaseSeconds大于0时启用租约模式：门阀只设置leaseSeconds过期，任务执行期间后台线程每leaseSeconds/3续期一次，
+ * 长任务不会因门阀过期被其他节点重复执行，节点宕机后最多leaseSeconds秒即可由其他节点接管。
+ * 续期发现门阀已被其他节点持有，或连续续期失败超过租约时间时，JobLock.isValid返回false，任务应检查后停止。
+ * 每次加锁写入唯一token，续期、释放均以lua脚本比较token后执行，不会误删其他节点的门阀；
+ * 加锁成功后递增KEY:fencing得到fencing token，通过fencedSupporter传给任务。
+ * <p/>
+ * partitionedSupporter为分区模式：任务分为N个分区，各节点在KEY:members中登记，并心跳写入memberTimeoutSeconds过期的KEY:member:nodeId，
+ * 存活判断只依赖redis过期，不比较各节点的本地时钟；按存活成员均分分区，
+ * 节点加入、离开（心跳KEY过期）后下次执行即重新分配；每个分区再以KEY:partition:N门阀独占，
+ * 成员变化期间视图不一致的节点不会同时处理同一分区。分区门阀按租约续期，未启用租约模式时租约为memberTimeoutSeconds，
+ * 节点宕机后其分区最多memberTimeoutSeconds秒即可由其他节点接管。KEY:members在最后一次心跳后memberTimeoutSeconds过期。
+ * <p/>
+ * queueSupporter为队列模式：获得门阀的节点拆分任务放入RedisWorkQueue，所有节点每次领取queueBatchSize个分片处理。
+ * <p/>
+ * leaderLeaseSeconds大于0时启用领导者模式：同一leaderGroup的节点竞选一个领导者KEY，领导者每leaderLeaseSeconds/3续期一次，
+ * supporter/fencedSupporter只在本地判断是否为领导者，每次执行不再访问redis；领导者宕机或续期失败后，
+ * 其他节点在租约过期后的下次选举中接管，每次当选递增fencing token。领导者上同一任务上一次执行未结束时跳过当次执行。
+ * 领导者模式只作用于supporter、fencedSupporter及queueSupporter的拆分步骤（队列分片仍由所有节点领取处理）；
+ * partitionedSupporter本身即由所有节点分担，不受领导者模式影响，始终使用成员心跳和分区门阀。
+ * <pre>
+ * &lt;bean id="jobSwitchSupporter" class="com.taotao.common.job.impl.JobSwitchSupporterImpl"&gt;
+ *     &lt;property name="leaseSeconds" value="30"/&gt;
+ *     &lt;property name="leaderGroup" value="SCM_JOB"/&gt;
+ *     &lt;property name="leaderLeaseSeconds" value="15"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
  *
  * @author: Zhenbin.Li
  * email： lizhenbin@oneplus.cn
@@ -24,32 +71,142 @@ public class JobSwitchSupporterImpl implements JobSwitchSupporter {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(JobSwitchSupporterImpl.class);
 
+    /**
+     * fencing token计数器KEY后缀
+     */
+    private static final String FENCING_SUFFIX = ":fencing";
+
+    /**
+     * 分区任务成员登记hash KEY后缀，field为nodeId
+     */
+    private static final String MEMBERS_SUFFIX = ":members";
+
+    /**
+     * 分区任务成员心跳KEY后缀，后接nodeId，memberTimeoutSeconds过期
+     */
+    private static final String MEMBER_SUFFIX = ":member:";
+
+    /**
+     * 领导者KEY后缀
+     */
+    private static final String LEADER_SUFFIX = ":leader";
+
+    /**
+     * 分区门阀KEY后缀，后接分区号
+     */
+    private static final String PARTITION_SUFFIX = ":partition:";
+
     @Autowired
     private RedisCache redisCache;
 
+    /**
+     * 租约秒数，0表示不续期，按JobRedisCacheKey.delayTime一次性设置过期时间
+     */
+    private int leaseSeconds = 0;
+
+    /**
+     * 门阀续期线程，与心跳、选举分开，避免redis变慢时相互阻塞导致续期不及时
+     */
+    private final ScheduledExecutorService leaseRenewer = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("job-lease-renewer-%d").build());
+
+    /**
+     * 分区任务心跳、领导者选举线程
+     */
+    private final ScheduledExecutorService leaseWatchdog = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("job-lease-watchdog-%d").build());
+
+    /**
+     * 本节点标识，分区任务成员列表中使用
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 分区任务成员心跳KEY过期秒数，每memberTimeoutSeconds/3心跳一次
+     */
+    private int memberTimeoutSeconds = 30;
+
+    /**
+     * 领导者租约秒数，大于0时supporter、fencedSupporter及queueSupporter的拆分步骤启用领导者模式，partitionedSupporter不受影响
+     */
+    private int leaderLeaseSeconds = 0;
+
+    /**
+     * 任务组名称，同组任务共用一个领导者KEY：leaderGroup:leader
+     */
+    private String leaderGroup = "JOB";
+
+    /**
+     * 当前任期的fencing token，0表示不是领导者
+     */
+    private volatile long leaderFencingToken;
+
+    /**
+     * 本地任期截止时间（System.nanoTime）
+     */
+    private volatile long leaderUntilNanos;
+
+    /**
+     * 领导者选举任务
+     */
+    private volatile ScheduledFuture<?> election;
+
+    /**
+     * 领导者模式下各任务是否正在执行，KEY为任务KEY，防止同一任务的执行重叠
+     */
+    private final Map<String, AtomicBoolean> leaderRunning = new ConcurrentHashMap<String, AtomicBoolean>();
+
+    /**
+     * 领导者模式下正在执行的任务持有记录，随任期续期或失效
+     */
+    private final Set<JobLock> leaderLocks = Collections.newSetFromMap(new ConcurrentHashMap<JobLock, Boolean>());
+
+    /**
+     * 队列模式每次领取的分片数量
+     */
+    private int queueBatchSize = 10;
+
+    /**
+     * 已加入的分区任务及其心跳任务
+     */
+    private final Map<JobRedisCacheKey, ScheduledFuture<?>> heartbeats = new ConcurrentHashMap<JobRedisCacheKey, ScheduledFuture<?>>();
+
     @Override
     public <F, T> void supporter(JobRedisCacheKey jobRedisCacheKey, Function<F, T> execute) {
         supporter(jobRedisCacheKey, execute, null);
     }
 
     @Override
-    public <F, T> T supporter(JobRedisCacheKey jobRedisCacheKey, Function<F, T> execute, F input) {
-        boolean addJobRedisCacheKey = true;
+    public <F, T> T supporter(JobRedisCacheKey jobRedisCacheKey, final Function<F, T> execute, final F input) {
+        return fencedSupporter(jobRedisCacheKey, jobLock -> execute.apply(input));
+    }
+
+    @Override
+    public <T> T fencedSupporter(JobRedisCacheKey jobRedisCacheKey, Function<JobLock, T> execute) {
+        if (leaderLeaseSeconds > 0) {
+            return leaderSupporter(jobRedisCacheKey, execute);
+        }
+        JobLock jobLock = null;
+        ScheduledFuture<?> leaseRenewal = null;
         try {
-            addJobRedisCacheKey = addJobRedisCacheKey(jobRedisCacheKey);
-            if (!addJobRedisCacheKey) {
+            jobLock = addJobRedisCacheKey(jobRedisCacheKey);
+            if (jobLock == null) {
                 return null;
             }
 
-            return execute.apply(input);
+            leaseRenewal = startLeaseRenewal(Collections.singletonMap(jobRedisCacheKey.getKey(), jobLock.getOwnerToken()), jobLock);
+            return execute.apply(jobLock);
 
         } catch (Exception ex) {
-            // 产生异常,则直接标志删除KEY
-            addJobRedisCacheKey = true;
             LOGGER.error("执行定时任务异常, jobRedisCacheKey={}", jobRedisCacheKey, ex);
         } finally {
-            if (addJobRedisCacheKey) {
-                removeJobRedisCacheKey(jobRedisCacheKey);
+            if (leaseRenewal != null) {
+                leaseRenewal.cancel(false);
+            }
+            // 只释放本次持有的门阀,加锁异常时同样按token释放,不会误删其他节点的门阀
+            if (jobLock != null) {
+                jobLock.invalidate();
+                removeJobRedisCacheKey(jobLock);
             }
         }
 
@@ -57,35 +214,475 @@ public class JobSwitchSupporterImpl implements JobSwitchSupporter {
     }
 
     /**
-     * 设置redis key对应的内容
+     * 领导者模式：只有租约未过期的领导者执行任务，不访问redis，fencing token为本次任期的token；
+     * 同一任务上一次执行未结束时跳过，取得执行标记后再次确认任期，执行结束后任期已变化时告警
+     */
+    private <T> T leaderSupporter(JobRedisCacheKey jobRedisCacheKey, Function<JobLock, T> execute) {
+        startElection();
+        if (!isLeader()) {
+            LOGGER.debug("非领导者节点, 跳过当次任务, jobRedisCacheKey={}, leaderGroup={}", jobRedisCacheKey, leaderGroup);
+            return null;
+        }
+        AtomicBoolean running = leaderRunning.computeIfAbsent(jobRedisCacheKey.getKey(), key -> new AtomicBoolean());
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.info("上一次执行尚未结束, 跳过当次任务, jobRedisCacheKey={}", jobRedisCacheKey);
+            return null;
+        }
+        JobLock jobLock = null;
+        try {
+            long fencingToken = leaderFencingToken;
+            long untilNanos = leaderUntilNanos;
+            if (fencingToken <= 0 || System.nanoTime() - untilNanos >= 0) {
+                LOGGER.debug("非领导者节点, 跳过当次任务, jobRedisCacheKey={}, leaderGroup={}", jobRedisCacheKey, leaderGroup);
+                return null;
+            }
+            jobLock = new JobLock(jobRedisCacheKey, nodeId, fencingToken, untilNanos);
+            leaderLocks.add(jobLock);
+            T result = execute.apply(jobLock);
+            if (!jobLock.isValid() || leaderFencingToken != fencingToken) {
+                LOGGER.warn("任务执行期间领导者任期已结束, 外部写入须以fencing token校验, jobLock={}", jobLock);
+            }
+            return result;
+        } catch (Exception ex) {
+            LOGGER.error("执行定时任务异常, jobRedisCacheKey={}", jobRedisCacheKey, ex);
+        } finally {
+            if (jobLock != null) {
+                leaderLocks.remove(jobLock);
+                jobLock.invalidate();
+            }
+            running.set(false);
+        }
+        return null;
+    }
+
+    /**
+     * 启动领导者选举，只启动一次；首次选举在调用线程同步执行，之后每leaderLeaseSeconds/3续期或竞选一次
+     */
+    protected void startElection() {
+        if (election != null) {
+            return;
+        }
+        synchronized (this) {
+            if (election != null) {
+                return;
+            }
+            campaign();
+            long interval = Math.max(1L, TimeUnit.SECONDS.toMillis(leaderLeaseSeconds) / 3);
+            election = leaseWatchdog.scheduleWithFixedDelay(this::campaign, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 领导者续期租约，其他节点尝试竞选；异常不能抛出，否则后续选举不再执行。
+     * 本地任期按发起续期前的时间计算，续期失败时最晚在redis中租约过期前停止执行任务
+     */
+    private void campaign() {
+        String leaderKey = leaderGroup + LEADER_SUFFIX;
+        try {
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(leaderLeaseSeconds);
+            if (leaderFencingToken > 0) {
+                Long renewed = this.redisCache.renewLease(leaderKey, nodeId, leaderLeaseSeconds);
+                if (renewed == null) {
+                    LOGGER.warn("领导者续期失败, leaderGroup={}, nodeId={}", leaderGroup, nodeId);
+                    return;
+                }
+                if (renewed > 0) {
+                    leaderUntilNanos = until;
+                    for (JobLock jobLock : leaderLocks) {
+                        jobLock.renewedUntil(until);
+                    }
+                    return;
+                }
+                leaderFencingToken = 0;
+                for (JobLock jobLock : leaderLocks) {
+                    jobLock.invalidate();
+                }
+                LOGGER.warn("领导者租约已失去, leaderGroup={}, nodeId={}", leaderGroup, nodeId);
+            }
+
+            Long setnx = this.redisCache.acquireLease(leaderKey, nodeId, leaderLeaseSeconds);
+            if (setnx == null || setnx <= 0) {
+                return;
+            }
+            Long fencingToken = this.redisCache.nextFencingToken(leaderKey + FENCING_SUFFIX);
+            if (fencingToken == null) {
+                this.redisCache.releaseLease(leaderKey, nodeId);
+                return;
+            }
+            leaderUntilNanos = until;
+            leaderFencingToken = fencingToken;
+            LOGGER.info("当选领导者, leaderGroup={}, nodeId={}, fencingToken={}", leaderGroup, nodeId, fencingToken);
+        } catch (Exception e) {
+            LOGGER.error("领导者选举异常, leaderGroup={}, nodeId={}", leaderGroup, nodeId, e);
+        }
+    }
+
+    @Override
+    public <T> T partitionedSupporter(JobRedisCacheKey jobRedisCacheKey, int partitions, Function<Set<Integer>, T> execute) {
+        String ownerToken = UUID.randomUUID().toString();
+        Map<String, String> claimed = new LinkedHashMap<String, String>();
+        ScheduledFuture<?> leaseRenewal = null;
+        try {
+            joinMembers(jobRedisCacheKey);
+            Set<Integer> claimedPartitions = new TreeSet<Integer>();
+            for (Integer partition : assignPartitions(jobRedisCacheKey, partitions)) {
+                if (claimPartition(jobRedisCacheKey, partition, ownerToken)) {
+                    claimed.put(partitionKey(jobRedisCacheKey, partition), ownerToken);
+                    claimedPartitions.add(partition);
+                }
+            }
+            if (claimedPartitions.isEmpty()) {
+                LOGGER.info("未分配到分区, 跳过当次任务, jobRedisCacheKey={}, nodeId={}", jobRedisCacheKey, nodeId);
+                return null;
+            }
+
+            LOGGER.info("获得分区, jobRedisCacheKey={}, nodeId={}, partitions={}", jobRedisCacheKey, nodeId, claimedPartitions);
+            leaseRenewal = startLeaseRenewal(claimed, null, partitionLockSeconds());
+            return execute.apply(Collections.unmodifiableSet(claimedPartitions));
+
+        } catch (Exception ex) {
+            LOGGER.error("执行分区定时任务异常, jobRedisCacheKey={}", jobRedisCacheKey, ex);
+        } finally {
+            if (leaseRenewal != null) {
+                leaseRenewal.cancel(false);
+            }
+            for (Map.Entry<String, String> lock : claimed.entrySet()) {
+                this.redisCache.releaseLease(lock.getKey(), lock.getValue());
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int queueSupporter(JobRedisCacheKey jobRedisCacheKey, final RedisWorkQueue queue,
+                              final Function<JobLock, List<String>> producer, Function<String, Boolean> consumer) {
+        fencedSupporter(jobRedisCacheKey, jobLock -> {
+            Long backlog = queue.backlog();
+            if (backlog == null || backlog > 0) {
+                LOGGER.info("上一批分片尚未处理完成, 跳过拆分, jobRedisCacheKey={}, backlog={}", jobRedisCacheKey, backlog);
+                return null;
+            }
+            List<String> chunks = producer.apply(jobLock);
+            if (chunks != null && !chunks.isEmpty()) {
+                queue.enqueue(chunks);
+                LOGGER.info("任务拆分完成, jobRedisCacheKey={}, chunks={}", jobRedisCacheKey, chunks.size());
+            }
+            return null;
+        });
+
+        int processed = 0;
+        // 本次已失败的分片再次被领取时结束,留到下次执行,避免同一分片在本次执行中反复重试
+        Set<String> failed = new HashSet<String>();
+        boolean retried = false;
+        List<RedisWorkQueue.WorkItem> items;
+        while (!retried && !(items = queue.dequeue(queueBatchSize)).isEmpty()) {
+            for (RedisWorkQueue.WorkItem item : items) {
+                if (failed.contains(item.getId())) {
+                    retried = true;
+                    continue;
+                }
+                try {
+                    if (Boolean.TRUE.equals(consumer.apply(item.getPayload())) && queue.ack(item)) {
+                        processed++;
+                        continue;
+                    }
+                    LOGGER.warn("分片处理未确认, 可见超时后重新投递, jobRedisCacheKey={}, item={}", jobRedisCacheKey, item);
+                } catch (Exception ex) {
+                    LOGGER.error("处理分片异常, 可见超时后重新投递, jobRedisCacheKey={}, item={}", jobRedisCacheKey, item, ex);
+                }
+                failed.add(item.getId());
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * 以唯一token设置redis key对应的内容,成功后递增fencing token
      *
      * @param jobRedisCacheKey
+     * @return 门阀尚未打开时返回null
      */
-    protected boolean addJobRedisCacheKey(JobRedisCacheKey jobRedisCacheKey) {
+    protected JobLock addJobRedisCacheKey(JobRedisCacheKey jobRedisCacheKey) {
         if (this.redisCache != null && jobRedisCacheKey != null) {
-            Long setnx = this.redisCache.setnx(jobRedisCacheKey.getKey(), jobRedisCacheKey.getValue(), jobRedisCacheKey.getDelayTime());
+            String ownerToken = UUID.randomUUID().toString();
+            long validUntilNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(lockSeconds(jobRedisCacheKey));
+            Long setnx = this.redisCache.acquireLease(jobRedisCacheKey.getKey(), ownerToken, lockSeconds(jobRedisCacheKey));
             if (setnx == null || setnx <= 0) {
                 LOGGER.info("定时任务门阀JobRedisCacheKey尚未打开, 跳过当次任务, jobRedisCacheKey={}", jobRedisCacheKey);
-                return false;
+                return null;
             }
-            LOGGER.info("设置定时任务门阀开关成功, jobRedisCacheKey={}", jobRedisCacheKey);
-            return true;
+            JobLock jobLock = new JobLock(jobRedisCacheKey, ownerToken, 0L, validUntilNanos);
+            Long fencingToken = this.redisCache.nextFencingToken(jobRedisCacheKey.getKey() + FENCING_SUFFIX);
+            if (fencingToken == null) {
+                LOGGER.warn("获取定时任务fencing token失败, 跳过当次任务, jobRedisCacheKey={}", jobRedisCacheKey);
+                removeJobRedisCacheKey(jobLock);
+                return null;
+            }
+            jobLock = new JobLock(jobRedisCacheKey, ownerToken, fencingToken, validUntilNanos);
+            LOGGER.info("设置定时任务门阀开关成功, jobLock={}", jobLock);
+            return jobLock;
         }
 
-        return false;
+        return null;
     }
 
     /**
-     * 删除redis key对应的内容
+     * 门阀过期秒数
      *
      * @param jobRedisCacheKey
+     * @return
      */
-    protected void removeJobRedisCacheKey(JobRedisCacheKey jobRedisCacheKey) {
-        if (this.redisCache != null && jobRedisCacheKey != null) {
-            this.redisCache.del(jobRedisCacheKey.getKey());
-            LOGGER.info("删除定时任务门阀开关成功, jobRedisCacheKey={}", jobRedisCacheKey);
+    protected int lockSeconds(JobRedisCacheKey jobRedisCacheKey) {
+        return leaseSeconds > 0 ? leaseSeconds : jobRedisCacheKey.getDelayTime();
+    }
+
+    /**
+     * 租约模式下启动续期任务，任务结束后须cancel；全部续期成功时延长jobLock有效期，任一门阀已被其他节点持有时jobLock失效，
+     * redis异常时不延长，超过租约时间后jobLock同样失效
+     *
+     * @param locks   门阀KEY -> 本次写入的token
+     * @param jobLock 本次持有记录，可以为空
+     * @return 未启用租约模式时返回null
+     */
+    protected ScheduledFuture<?> startLeaseRenewal(final Map<String, String> locks, final JobLock jobLock) {
+        return startLeaseRenewal(locks, jobLock, leaseSeconds);
+    }
+
+    /**
+     * 每seconds/3把门阀续期为seconds秒
+     *
+     * @param seconds 小于等于0时不续期，返回null
+     */
+    private ScheduledFuture<?> startLeaseRenewal(final Map<String, String> locks, final JobLock jobLock, final int seconds) {
+        if (seconds <= 0) {
+            return null;
+        }
+        long interval = Math.max(1L, TimeUnit.SECONDS.toMillis(seconds) / 3);
+        return leaseRenewer.scheduleWithFixedDelay(() -> {
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            boolean renewedAll = true;
+            for (Map.Entry<String, String> lock : locks.entrySet()) {
+                Long renewed = renewLease(lock.getKey(), lock.getValue(), seconds);
+                if (renewed != null && renewed <= 0 && jobLock != null) {
+                    jobLock.invalidate();
+                }
+                renewedAll &= renewed != null && renewed > 0;
+            }
+            if (renewedAll && jobLock != null) {
+                jobLock.renewedUntil(until);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 续期一次，只续期本次持有的门阀；异常不能抛出，否则后续续期不再执行
+     *
+     * @param key
+     * @param ownerToken
+     * @param seconds
+     * @return 续期成功返回1，门阀已被其他节点持有或已过期返回0，redis异常时返回null
+     */
+    private Long renewLease(String key, String ownerToken, int seconds) {
+        try {
+            Long renewed = this.redisCache.renewLease(key, ownerToken, seconds);
+            if (renewed == null || renewed <= 0) {
+                LOGGER.warn("定时任务门阀续期失败, key={}, ownerToken={}, result={}", key, ownerToken, renewed);
+            }
+            return renewed;
+        } catch (Exception e) {
+            LOGGER.error("定时任务门阀续期异常, key={}, ownerToken={}", key, ownerToken, e);
+            return null;
+        }
+    }
+
+    /**
+     * 加入任务成员列表并开始心跳，每个任务只加入一次
+     *
+     * @param jobRedisCacheKey
+     */
+    protected void joinMembers(final JobRedisCacheKey jobRedisCacheKey) {
+        if (heartbeats.containsKey(jobRedisCacheKey)) {
+            return;
+        }
+        synchronized (heartbeats) {
+            if (heartbeats.containsKey(jobRedisCacheKey)) {
+                return;
+            }
+            heartbeat(jobRedisCacheKey);
+            long interval = Math.max(1L, TimeUnit.SECONDS.toMillis(memberTimeoutSeconds) / 3);
+            heartbeats.put(jobRedisCacheKey, leaseWatchdog.scheduleWithFixedDelay(() -> heartbeat(jobRedisCacheKey),
+                    interval, interval, TimeUnit.MILLISECONDS));
+            LOGGER.info("加入分区任务成员, jobRedisCacheKey={}, nodeId={}", jobRedisCacheKey, nodeId);
+        }
+    }
+
+    /**
+     * 心跳一次：重写本节点心跳KEY的过期时间，并在成员hash中登记，两者都以memberTimeoutSeconds过期（不加随机抖动）；
+     * 异常不能抛出，否则后续心跳不再执行
+     *
+     * @param jobRedisCacheKey
+     */
+    private void heartbeat(JobRedisCacheKey jobRedisCacheKey) {
+        try {
+            this.redisCache.setLease(memberKey(jobRedisCacheKey, nodeId), nodeId, memberTimeoutSeconds);
+            this.redisCache.hsetLease(jobRedisCacheKey.getKey() + MEMBERS_SUFFIX, nodeId, nodeId, memberTimeoutSeconds);
+        } catch (Exception e) {
+            LOGGER.error("分区任务心跳异常, jobRedisCacheKey={}", jobRedisCacheKey, e);
+        }
+    }
+
+    /**
+     * 按存活成员分配分区：成员按nodeId排序，第i个成员负责 partition % 成员数 == i 的分区。
+     * 心跳KEY已过期的成员视为已离开并从成员hash中删除；成员hash和心跳KEY都从master读取，避免从节点同步延迟误判
+     *
+     * @param jobRedisCacheKey
+     * @param partitions       分区总数
+     * @return 本节点应负责的分区
+     */
+    protected Set<Integer> assignPartitions(JobRedisCacheKey jobRedisCacheKey, int partitions) {
+        String membersKey = jobRedisCacheKey.getKey() + MEMBERS_SUFFIX;
+        Map<String, String> registered = this.redisCache.hgetAll(membersKey, true);
+        if (registered == null) {
+            return Collections.emptySet();
+        }
+        List<String> members = new ArrayList<String>(registered.size() + 1);
+        for (String member : registered.keySet()) {
+            if (nodeId.equals(member) || this.redisCache.get(memberKey(jobRedisCacheKey, member), true) != null) {
+                members.add(member);
+            } else {
+                this.redisCache.hdel(membersKey, member);
+                LOGGER.info("分区任务成员心跳超时, 移出成员, jobRedisCacheKey={}, nodeId={}", jobRedisCacheKey, member);
+            }
+        }
+        if (!members.contains(nodeId)) {
+            members.add(nodeId);
+        }
+        Collections.sort(members);
+        int index = members.indexOf(nodeId);
+        Set<Integer> assigned = new TreeSet<Integer>();
+        for (int partition = index; partition < partitions; partition += members.size()) {
+            assigned.add(partition);
+        }
+        return assigned;
+    }
+
+    /**
+     * 以唯一token设置分区门阀，防止成员变化期间两个节点同时处理同一分区
+     *
+     * @param jobRedisCacheKey
+     * @param partition
+     * @param ownerToken
+     * @return 是否获得分区
+     */
+    protected boolean claimPartition(JobRedisCacheKey jobRedisCacheKey, int partition, String ownerToken) {
+        Long setnx = this.redisCache.acquireLease(partitionKey(jobRedisCacheKey, partition), ownerToken, partitionLockSeconds());
+        return setnx != null && setnx > 0;
+    }
+
+    /**
+     * 分区门阀租约秒数：租约模式下为leaseSeconds，否则为memberTimeoutSeconds，执行期间均续期
+     *
+     * @return
+     */
+    protected int partitionLockSeconds() {
+        return leaseSeconds > 0 ? leaseSeconds : memberTimeoutSeconds;
+    }
+
+    private static String partitionKey(JobRedisCacheKey jobRedisCacheKey, int partition) {
+        return jobRedisCacheKey.getKey() + PARTITION_SUFFIX + partition;
+    }
+
+    private static String memberKey(JobRedisCacheKey jobRedisCacheKey, String nodeId) {
+        return jobRedisCacheKey.getKey() + MEMBER_SUFFIX + nodeId;
+    }
+
+    /**
+     * 删除redis key对应的内容,只有值仍为本次token时才删除
+     *
+     * @param jobLock
+     */
+    protected void removeJobRedisCacheKey(JobLock jobLock) {
+        if (this.redisCache != null && jobLock != null) {
+            Long deleted = this.redisCache.releaseLease(jobLock.getJobRedisCacheKey().getKey(), jobLock.getOwnerToken());
+            if (deleted == null || deleted <= 0) {
+                LOGGER.warn("定时任务门阀已过期或被其他节点持有, 未删除, jobLock={}", jobLock);
+                return;
+            }
+            LOGGER.info("删除定时任务门阀开关成功, jobLock={}", jobLock);
         } else {
-            throw new RuntimeException("jobRedisCacheKey为空!");
+            throw new RuntimeException("jobLock为空!");
         }
     }
-}
+
+    /**
+     * 停止心跳并移出所有分区任务成员，其余节点下次执行时即重新分配分区；领导者释放租约，其他节点下次选举即可接管
+     */
+    @PreDestroy
+    public void destroy() {
+        leaseRenewer.shutdownNow();
+        leaseWatchdog.shutdownNow();
+        if (leaderFencingToken > 0) {
+            leaderFencingToken = 0;
+            this.redisCache.releaseLease(leaderGroup + LEADER_SUFFIX, nodeId);
+            LOGGER.info("释放领导者, leaderGroup={}, nodeId={}", leaderGroup, nodeId);
+        }
+        for (JobRedisCacheKey jobRedisCacheKey : heartbeats.keySet()) {
+            this.redisCache.del(memberKey(jobRedisCacheKey, nodeId));
+            this.redisCache.hdel(jobRedisCacheKey.getKey() + MEMBERS_SUFFIX, nodeId);
+        }
+        heartbeats.clear();
+    }
+
+    public void setRedisCache(RedisCache redisCache) {
+        this.redisCache = redisCache;
+    }
+
+    public int getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    public void setLeaseSeconds(int leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    public int getLeaderLeaseSeconds() {
+        return leaderLeaseSeconds;
+    }
+
+    public void setLeaderLeaseSeconds(int leaderLeaseSeconds) {
+        this.leaderLeaseSeconds = leaderLeaseSeconds;
+    }
+
+    public String getLeaderGroup() {
+        return leaderGroup;
+    }
+
+    public void setLeaderGroup(String leaderGroup) {
+        this.leaderGroup = leaderGroup;
+    }
+
+    public boolean isLeader() {
+        return leaderFencingToken > 0 && System.nanoTime() - leaderUntilNanos < 0;
+    }
+
+    public int getQueueBatchSize() {
+        return queueBatchSize;
+    }
+
+    public void setQueueBatchSize(int queueBatchSize) {
+        this.queueBatchSize = queueBatchSize;
+    }
+
+    public int getMemberTimeoutSeconds() {
+        return memberTimeoutSeconds;
+    }
+
+    public void setMemberTimeoutSeconds(int memberTimeoutSeconds) {
+        this.memberTimeoutSeconds = memberTimeoutSeconds;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+package com.taotao.common.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 功能描述：RedisCache连接池熔断器
+ * <p/>
+ * 统计窗口内调用数达到minimumCalls后，失败率或慢调用率超过阈值即熔断（OPEN），
+ * 熔断期间获取连接直接抛出CircuitBreakerOpenException，RedisCache按原有逻辑返回null/false；
+ * 熔断openMillis后进入半开（HALF_OPEN），放行halfOpenCalls个试探调用，全部成功则恢复（CLOSED），
+ * 任一失败重新熔断。状态变化通知Listener。
+ * <p/>
+ * 调用方式：acquire() 获取许可，失败时 onError()，最终（finally）onComplete()，三者须在同一线程调用。
+ * <pre>
+ * &lt;property name="readCircuitBreaker"&gt;
+ *     &lt;bean class="com.taotao.common.util.CircuitBreaker"&gt;
+ *         &lt;constructor-arg value="readShardedJedisPool"/&gt;
+ *         &lt;property name="failureRateThreshold" value="0.5"/&gt;
+ *         &lt;property name="slowCallMillis" value="200"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/property&gt;
+ * </pre>
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 熔断器状态变化监听
+     */
+    public interface Listener {
+        void onStateChange(String name, State from, State to);
+    }
+
+    /**
+     * 熔断时抛出，不带堆栈
+     */
+    public static class CircuitBreakerOpenException extends RuntimeException {
+
+        private static final long serialVersionUID = -3056326315216736406L;
+
+        CircuitBreakerOpenException(String name) {
+            super("circuit breaker open: " + name, null, false, false);
+        }
+    }
+
+    private final String name;
+
+    private final boolean enabled;
+
+    /**
+     * 失败率阈值（0-1）
+     */
+    private double failureRateThreshold = 0.5D;
+
+    /**
+     * 慢调用率阈值（0-1）
+     */
+    private double slowCallRateThreshold = 0.8D;
+
+    private long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private int minimumCalls = 20;
+
+    private long windowMillis = 10000L;
+
+    private long openMillis = 5000L;
+
+    private int halfOpenCalls = 5;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong slowCalls = new AtomicLong();
+
+    private volatile long windowStart = System.currentTimeMillis();
+
+    private volatile long openedAt;
+
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    /**
+     * 当前线程的调用状态：0 未获得许可，1 已获得许可，2 已失败
+     */
+    private final ThreadLocal<int[]> callState = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final CircuitBreakerOpenException openException;
+
+    public CircuitBreaker(String name) {
+        this(name, true);
+    }
+
+    private CircuitBreaker(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+        this.openException = new CircuitBreakerOpenException(name);
+    }
+
+    /**
+     * 不做熔断的熔断器
+     *
+     * @param name
+     * @return
+     */
+    public static CircuitBreaker disabled(String name) {
+        return new CircuitBreaker(name, false);
+    }
+
+    /**
+     * 获取调用许可
+     *
+     * @throws CircuitBreakerOpenException 熔断中
+     */
+    public void acquire() {
+        if (!enabled) {
+            return;
+        }
+        int[] current = callState.get();
+        State s = state.get();
+        if (s == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis || !transition(State.OPEN, State.HALF_OPEN)) {
+                current[0] = 0;
+                throw openException;
+            }
+            s = State.HALF_OPEN;
+        }
+        if (s == State.HALF_OPEN && halfOpenPermits.incrementAndGet() > halfOpenCalls) {
+            current[0] = 0;
+            throw openException;
+        }
+        current[0] = 1;
+    }
+
+    public void onError(Throwable error) {
+        if (!enabled || error instanceof CircuitBreakerOpenException) {
+            return;
+        }
+        int[] current = callState.get();
+        if (current[0] != 1) {
+            return;
+        }
+        current[0] = 2;
+        calls.incrementAndGet();
+        failures.incrementAndGet();
+        if (state.get() == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+        } else {
+            evaluate();
+        }
+    }
+
+    public void onComplete(long nanos) {
+        if (!enabled) {
+            return;
+        }
+        int[] current = callState.get();
+        int callResult = current[0];
+        current[0] = 0;
+        if (callResult != 1) {
+            return;
+        }
+        calls.incrementAndGet();
+        if (nanos >= slowCallNanos) {
+            slowCalls.incrementAndGet();
+        }
+        if (state.get() == State.HALF_OPEN) {
+            if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls && transition(State.HALF_OPEN, State.CLOSED)) {
+                resetWindow();
+            }
+        } else {
+            evaluate();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void setListeners(List<Listener> listeners) {
+        this.listeners.addAll(listeners);
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    private void evaluate() {
+        if (state.get() != State.CLOSED) {
+            return;
+        }
+        long total = calls.get();
+        if (total >= minimumCalls) {
+            if (failures.get() >= total * failureRateThreshold || slowCalls.get() >= total * slowCallRateThreshold) {
+                open(State.CLOSED);
+                return;
+            }
+        }
+        if (System.currentTimeMillis() - windowStart >= windowMillis) {
+            resetWindow();
+        }
+    }
+
+    private void open(State from) {
+        openedAt = System.currentTimeMillis();
+        transition(from, State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowStart = System.currentTimeMillis();
+        calls.set(0);
+        failures.set(0);
+        slowCalls.set(0);
+    }
+
+    private boolean transition(State from, State to) {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        if (to == State.HALF_OPEN) {
+            halfOpenPermits.set(0);
+            halfOpenSuccesses.set(0);
+        }
+        LOGGER.warn("redis circuit breaker state changed, name={}, from={}, to={}", name, from, to);
+        for (Listener listener : listeners) {
+            try {
+                listener.onStateChange(name, from, to);
+            } catch (Exception e) {
+                LOGGER.error("circuit breaker listener error, name={}", name, e);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,331 @@
+package com.taotao.common.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 功能描述：RedisCache热点key检测
+ * <p/>
+ * 读、写分别使用count-min sketch计数（固定内存、无锁），估算值超过当前top-K门槛的key进入候选集，
+ * 候选集已满时替换其中估算值最小的key（space-saving）；
+ * 每个统计周期结束时输出读写top-K并清零计数。开启promote时，读top-K中超过promoteThreshold的key
+ * 在下一个周期内由本地缓存（短存活时间）提供读取，避免单个分片被热点key打满。
+ * <pre>
+ * &lt;bean id="hotKeyDetector" class="com.taotao.common.util.HotKeyDetector"&gt;
+ *     &lt;constructor-arg value="20"/&gt;
+ *     &lt;constructor-arg value="10"/&gt;
+ *     &lt;property name="promoteThreshold" value="5000"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class HotKeyDetector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotKeyDetector.class);
+
+    private static final int SKETCH_DEPTH = 4;
+
+    private static final int SKETCH_WIDTH = 1 << 14;
+
+    private final int topK;
+
+    private final int intervalSeconds;
+
+    private final TopK reads;
+
+    private final TopK writes;
+
+    /**
+     * 读次数在一个周期内达到该值的key被提升到本地缓存，0表示不提升
+     */
+    private long promoteThreshold = 0;
+
+    /**
+     * 提升后本地缓存的存活秒数
+     */
+    private int promoteExpireSeconds = 1;
+
+    private volatile Set<String> promotedKeys = Collections.emptySet();
+
+    private NearCache promoteCache;
+
+    private ScheduledExecutorService reportExecutor;
+
+    /**
+     * @param topK            每个周期输出的热点key数量
+     * @param intervalSeconds 统计周期秒数
+     */
+    public HotKeyDetector(int topK, int intervalSeconds) {
+        this.topK = topK;
+        this.intervalSeconds = intervalSeconds;
+        this.reads = new TopK(topK);
+        this.writes = new TopK(topK);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (reportExecutor != null) {
+            return;
+        }
+        if (promoteThreshold > 0) {
+            promoteCache = new NearCache(topK * 4L, promoteExpireSeconds);
+        }
+        reportExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("redis-hot-key-report").build());
+        reportExecutor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (reportExecutor != null) {
+            reportExecutor.shutdownNow();
+            reportExecutor = null;
+        }
+    }
+
+    public void recordRead(String key) {
+        reads.record(key);
+    }
+
+    public void recordWrite(String key) {
+        writes.record(key);
+        invalidate(key);
+    }
+
+    /**
+     * 失效提升到本地缓存的值（其他节点写入时）
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        NearCache cache = promoteCache;
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    public void invalidateAll() {
+        NearCache cache = promoteCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 已提升的热点key返回本地缓存，否则返回null
+     *
+     * @param key
+     * @return
+     */
+    public NearCache promoted(String key) {
+        NearCache cache = promoteCache;
+        return cache != null && promotedKeys.contains(key) ? cache : null;
+    }
+
+    /**
+     * 上一个周期的读热点key
+     */
+    public List<HotKey> getTopReadKeys() {
+        return reads.last;
+    }
+
+    /**
+     * 上一个周期的写热点key
+     */
+    public List<HotKey> getTopWriteKeys() {
+        return writes.last;
+    }
+
+    void report() {
+        try {
+            List<HotKey> topReads = reads.rotate();
+            List<HotKey> topWrites = writes.rotate();
+            if (!topReads.isEmpty() || !topWrites.isEmpty()) {
+                LOGGER.info("redis hot keys in last {}s, reads={}, writes={}", intervalSeconds, topReads, topWrites);
+            }
+            if (promoteCache != null) {
+                Set<String> promoted = new HashSet<String>();
+                for (HotKey hotKey : topReads) {
+                    if (hotKey.getCount() >= promoteThreshold) {
+                        promoted.add(hotKey.getKey());
+                    }
+                }
+                for (String key : promotedKeys) {
+                    if (!promoted.contains(key)) {
+                        promoteCache.invalidate(key);
+                    }
+                }
+                promotedKeys = promoted;
+            }
+        } catch (Exception e) {
+            LOGGER.error("report redis hot keys error", e);
+        }
+    }
+
+    public void setPromoteThreshold(long promoteThreshold) {
+        this.promoteThreshold = promoteThreshold;
+    }
+
+    public void setPromoteExpireSeconds(int promoteExpireSeconds) {
+        this.promoteExpireSeconds = promoteExpireSeconds;
+    }
+
+    /**
+     * 热点key及其在统计周期内的估算次数
+     */
+    public static class HotKey {
+
+        private final String key;
+
+        private final long count;
+
+        HotKey(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count;
+        }
+    }
+
+    /**
+     * count-min sketch + 有界候选集
+     */
+    private static class TopK {
+
+        private final int k;
+
+        private final int candidateCapacity;
+
+        private final AtomicLongArray sketch = new AtomicLongArray(SKETCH_DEPTH * SKETCH_WIDTH);
+
+        private final ConcurrentMap<String, Boolean> candidates = new ConcurrentHashMap<String, Boolean>();
+
+        /**
+         * 进入候选集的最小估算次数，由上一个周期的top-K决定
+         */
+        private volatile long floor = 1;
+
+        /**
+         * 上次替换时候选集中的最小估算次数；周期内计数只增不减，估算值不超过该值的key不可能替换任何候选
+         */
+        private volatile long candidateMin = 0;
+
+        private volatile List<HotKey> last = Collections.emptyList();
+
+        TopK(int k) {
+            this.k = k;
+            this.candidateCapacity = k * 8;
+        }
+
+        void record(String key) {
+            int hash = key.hashCode();
+            long estimate = Long.MAX_VALUE;
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                estimate = Math.min(estimate, sketch.incrementAndGet(i * SKETCH_WIDTH + index(hash, i)));
+            }
+            if (estimate < floor || candidates.containsKey(key)) {
+                return;
+            }
+            if (candidates.size() < candidateCapacity) {
+                candidates.putIfAbsent(key, Boolean.TRUE);
+            } else if (estimate > candidateMin) {
+                replaceMin(key, estimate);
+            }
+        }
+
+        /**
+         * 候选集已满时，估算值超过最小候选的key替换该候选
+         */
+        private synchronized void replaceMin(String key, long estimate) {
+            if (candidates.containsKey(key) || candidates.size() < candidateCapacity) {
+                candidates.putIfAbsent(key, Boolean.TRUE);
+                return;
+            }
+            String minKey = null;
+            long min = Long.MAX_VALUE;
+            long secondMin = Long.MAX_VALUE;
+            for (String candidate : candidates.keySet()) {
+                long candidateEstimate = estimate(candidate);
+                if (candidateEstimate < min) {
+                    secondMin = min;
+                    min = candidateEstimate;
+                    minKey = candidate;
+                } else if (candidateEstimate < secondMin) {
+                    secondMin = candidateEstimate;
+                }
+            }
+            if (minKey == null || estimate <= min) {
+                candidateMin = min;
+                return;
+            }
+            candidates.remove(minKey);
+            candidates.put(key, Boolean.TRUE);
+            candidateMin = Math.min(secondMin, estimate);
+        }
+
+        long estimate(String key) {
+            int hash = key.hashCode();
+            long estimate = Long.MAX_VALUE;
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                estimate = Math.min(estimate, sketch.get(i * SKETCH_WIDTH + index(hash, i)));
+            }
+            return estimate;
+        }
+
+        /**
+         * 计算本周期top-K，清零计数进入下一个周期
+         */
+        List<HotKey> rotate() {
+            List<HotKey> hotKeys = new ArrayList<HotKey>(candidates.size());
+            for (Map.Entry<String, Boolean> entry : candidates.entrySet()) {
+                hotKeys.add(new HotKey(entry.getKey(), estimate(entry.getKey())));
+            }
+            Collections.sort(hotKeys, (a, b) -> Long.compare(b.getCount(), a.getCount()));
+            List<HotKey> top = hotKeys.size() > k ? new ArrayList<HotKey>(hotKeys.subList(0, k)) : hotKeys;
+
+            candidates.clear();
+            candidateMin = 0;
+            for (int i = 0; i < sketch.length(); i++) {
+                sketch.set(i, 0L);
+            }
+            // 下一个周期只有达到本周期第K名一半次数的key才进入候选集
+            floor = top.size() < k ? 1 : Math.max(1, top.get(top.size() - 1).getCount() / 2);
+            last = Collections.unmodifiableList(top);
+            return last;
+        }
+
+        private static int index(int hash, int row) {
+            int h = hash + row * 0x9E3779B9;
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            return h & (SKETCH_WIDTH - 1);
+        }
+    }
+}
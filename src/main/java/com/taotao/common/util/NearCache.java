@@ -0,0 +1,183 @@
+package com.taotao.common.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 功能描述：RedisCache进程内一级缓存（near cache）
+ * <p/>
+ * 按条数和写入后存活时间淘汰，缓存get/hget/smembers的读取结果，
+ * 通过RedisCache写入时按key失效。不缓存不存在的key（null）。
+ * <p/>
+ * 读取Redis前先取key的失效版本号（generation），回填时版本号已变化说明读取期间发生过失效，
+ * 此次读到的可能是旧值，不再回填，避免旧值在一级缓存中一直留到过期。
+ * <pre>
+ * &lt;property name="nearCache"&gt;
+ *     &lt;bean class="com.taotao.common.util.NearCache"&gt;
+ *         &lt;constructor-arg value="10000"/&gt;
+ *         &lt;constructor-arg value="5"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/property&gt;
+ * </pre>
+ */
+public class NearCache {
+
+    /**
+     * key -> String / Set&lt;String&gt; / hash字段缓存
+     */
+    private final Cache<String, Object> cache;
+
+    /**
+     * 按key哈希分段的失效版本号，失效时递增；不同key落在同一分段只会多一次回源
+     */
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maximumSize   最大缓存key数量
+     * @param expireSeconds 写入后存活秒数
+     */
+    public NearCache(long maximumSize, int expireSeconds) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public String get(String key) {
+        Object value = cache.getIfPresent(key);
+        return record(value instanceof String ? (String) value : null);
+    }
+
+    /**
+     * 读取Redis前获取key当前的失效版本号，回填时传入
+     *
+     * @param key
+     * @return
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @param generation 读取Redis前通过generation(key)获取的版本号
+     */
+    public void put(String key, String value, long generation) {
+        if (value != null && generation(key) == generation) {
+            cache.put(key, value);
+            recheck(key, generation);
+        }
+    }
+
+    public String hget(String key, String field) {
+        Object value = cache.getIfPresent(key);
+        return record(value instanceof HashFields ? ((HashFields) value).fields.get(field) : null);
+    }
+
+    public void hput(String key, String field, String value, long generation) {
+        if (value == null || generation(key) != generation) {
+            return;
+        }
+        Object holder = cache.getIfPresent(key);
+        if (!(holder instanceof HashFields)) {
+            holder = new HashFields();
+            cache.put(key, holder);
+        }
+        ((HashFields) holder).fields.put(field, value);
+        recheck(key, generation);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<String> smembers(String key) {
+        Object value = cache.getIfPresent(key);
+        Set<String> members = record(value instanceof Set ? (Set<String>) value : null);
+        return members == null ? null : new HashSet<String>(members);
+    }
+
+    public void sput(String key, Set<String> members, long generation) {
+        if (members != null && generation(key) == generation) {
+            cache.put(key, Collections.unmodifiableSet(new HashSet<String>(members)));
+            recheck(key, generation);
+        }
+    }
+
+    /**
+     * 失效指定key（包括hash下的所有字段）
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        generations.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * 失效先递增版本号再删除缓存，回填后版本号已变化时，失效可能发生在回填之前，需要再删除一次
+     */
+    private void recheck(String key, long generation) {
+        if (generation(key) != generation) {
+            cache.invalidate(key);
+        }
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private <V> V record(V value) {
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * hash字段缓存，整个hash按key一起失效
+     */
+    private static class HashFields {
+        private final ConcurrentMap<String, String> fields = new ConcurrentHashMap<String, String>();
+    }
+}
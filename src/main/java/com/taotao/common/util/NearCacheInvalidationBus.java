@@ -0,0 +1,224 @@
+package com.taotao.common.util;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：基于redis pub/sub的一级缓存跨节点失效通知
+ * <p/>
+ * 写入的key先在本地合并，按固定间隔批量发布到channel，同一个热点key在一个间隔内只发布一次；
+ * 后台订阅线程收到其他节点的消息后通过Listener失效本地缓存，订阅断开重连时清空全部本地缓存。
+ * 配置到RedisCache后，Listener与RedisCache写入后的本地失效相同（一级缓存及热点key提升的本地缓存）；
+ * 单独使用时只失效构造参数中的NearCache。
+ * 消息格式：节点ID + 换行 + 换行分隔的key列表（key中不能包含换行符）。
+ */
+public class NearCacheInvalidationBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearCacheInvalidationBus.class);
+
+    private static final char SEPARATOR = '\n';
+
+    /**
+     * 单条消息最多携带的key数量
+     */
+    private static final int MAX_KEYS_PER_MESSAGE = 500;
+
+    private final JedisPool jedisPool;
+
+    /**
+     * 收到失效通知时调用
+     */
+    public interface Listener {
+
+        void invalidate(String key);
+
+        void invalidateAll();
+    }
+
+    private volatile Listener listener;
+
+    private final String channel;
+
+    private final long flushIntervalMillis;
+
+    /**
+     * 当前节点ID，用于忽略自己发布的消息
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("near-cache-invalidation-flush").build());
+
+    private final JedisPubSub subscriber = new JedisPubSub() {
+        @Override
+        public void onMessage(String channel, String message) {
+            onInvalidation(message);
+        }
+    };
+
+    private volatile boolean running;
+
+    private Thread subscribeThread;
+
+    /**
+     * @param jedisPool           发布和订阅使用的连接池（一般为writeJedisPool）
+     * @param nearCache           需要失效的本地缓存
+     * @param channel             失效通知channel
+     * @param flushIntervalMillis 合并发布间隔
+     */
+    public NearCacheInvalidationBus(JedisPool jedisPool, NearCache nearCache, String channel, long flushIntervalMillis) {
+        this.jedisPool = jedisPool;
+        this.listener = new Listener() {
+            @Override
+            public void invalidate(String key) {
+                nearCache.invalidate(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                nearCache.invalidateAll();
+            }
+        };
+        this.channel = channel;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        subscribeThread = new Thread(this::subscribeLoop, "near-cache-invalidation-subscriber");
+        subscribeThread.setDaemon(true);
+        subscribeThread.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flushExecutor.shutdown();
+        flush();
+        try {
+            if (subscriber.isSubscribed()) {
+                subscriber.unsubscribe();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("unsubscribe near cache invalidation channel error, channel={}", channel, e);
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 登记一个已写入的key，在下一个发布间隔合并发送
+     *
+     * @param key
+     */
+    public void publish(String key) {
+        if (running) {
+            pendingKeys.add(key);
+        }
+    }
+
+    /**
+     * 发布所有待通知的key
+     */
+    void flush() {
+        if (pendingKeys.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<String>(Math.min(pendingKeys.size(), MAX_KEYS_PER_MESSAGE));
+        Iterator<String> iterator = pendingKeys.iterator();
+        while (iterator.hasNext()) {
+            keys.add(iterator.next());
+            iterator.remove();
+            if (keys.size() == MAX_KEYS_PER_MESSAGE || !iterator.hasNext()) {
+                send(keys);
+                keys.clear();
+            }
+        }
+    }
+
+    private void send(List<String> keys) {
+        Jedis jedis = null;
+        try {
+            jedis = jedisPool.getResource();
+            jedis.publish(channel, nodeId + SEPARATOR + Joiner.on(SEPARATOR).join(keys));
+        } catch (Exception e) {
+            LOGGER.error("publish near cache invalidation error, channel={}, size={}", channel, keys.size(), e);
+        } finally {
+            if (null != jedis) {
+                jedis.close();
+            }
+        }
+    }
+
+    private void onInvalidation(String message) {
+        int index = message.indexOf(SEPARATOR);
+        if (index < 0 || nodeId.equals(message.substring(0, index))) {
+            return;
+        }
+        Listener current = listener;
+        for (String key : Splitter.on(SEPARATOR).split(message.substring(index + 1))) {
+            current.invalidate(key);
+        }
+    }
+
+    private void subscribeLoop() {
+        while (running) {
+            Jedis jedis = null;
+            try {
+                jedis = jedisPool.getResource();
+                // 重新订阅前可能漏掉了消息
+                listener.invalidateAll();
+                jedis.subscribe(subscriber, channel);
+            } catch (Exception e) {
+                if (running) {
+                    LOGGER.error("subscribe near cache invalidation channel error, channel={}", channel, e);
+                    sleepQuietly(1000L);
+                }
+            } finally {
+                // 连接异常时close()会将连接作为broken归还
+                if (null != jedis) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
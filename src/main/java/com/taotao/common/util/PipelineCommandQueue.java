@@ -0,0 +1,320 @@
+package com.taotao.common.util;
+
+import com.taotao.common.util.CircuitBreaker.CircuitBreakerOpenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：RedisCacheAsync、RedisWriteBatcher共用的有界命令队列和pipeline执行
+ * <p/>
+ * 调用线程入队后立即拿到future，消费线程批量取出命令，读命令按读节点、写命令按写入节点各用一次pipeline执行，
+ * 本JVM最近写入过的key的读命令按master分组执行（read-your-writes），再逐个完成future；执行异常或被拒绝的命令以fallback完成。
+ * 入队与close互斥：close返回后不会再有命令入队，此时drain即可完成队列中全部剩余命令，不会遗留永不完成的future。
+ */
+final class PipelineCommandQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineCommandQueue.class);
+
+    private final RedisCache redisCache;
+
+    private final String name;
+
+    private final String readCommand;
+
+    private final String writeCommand;
+
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Command<?>> queue;
+
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean closed = true;
+
+    /**
+     * @param redisCache
+     * @param name          日志中的名称
+     * @param readCommand   读pipeline记录指标的命令名
+     * @param writeCommand  写pipeline记录指标的命令名
+     * @param maxBatchSize  单次pipeline最多合并的命令数
+     * @param queueCapacity
+     */
+    PipelineCommandQueue(RedisCache redisCache, String name, String readCommand, String writeCommand,
+                         int maxBatchSize, int queueCapacity) {
+        this.redisCache = redisCache;
+        this.name = name;
+        this.readCommand = readCommand;
+        this.writeCommand = writeCommand;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<Command<?>>(queueCapacity);
+    }
+
+    void open() {
+        closeLock.writeLock().lock();
+        try {
+            closed = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 停止接收新命令，等待正在进行的入队结束
+     */
+    void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 已关闭且队列中没有剩余命令
+     */
+    boolean isDrained() {
+        return closed && queue.isEmpty();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * 命令入队，缓存未启用、已关闭或队列已满时以fallback完成
+     *
+     * @param offerTimeoutMillis 队列已满时最多等待的毫秒数，0表示不等待
+     */
+    <T> CompletableFuture<T> submit(boolean write, String key, T fallback, PipelineCall<T> call, Callback<T> callback,
+                                    long offerTimeoutMillis) {
+        Command<T> command = new Command<T>(write, key, fallback, call, callback);
+        if (!redisCache.isEnable()) {
+            command.fail();
+            return command.future;
+        }
+        boolean offered = false;
+        closeLock.readLock().lock();
+        try {
+            if (!closed) {
+                offered = offerTimeoutMillis > 0 ? queue.offer(command, offerTimeoutMillis, TimeUnit.MILLISECONDS) : queue.offer(command);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        if (!offered) {
+            LOGGER.error("{} queue rejected, key={}, pending={}", name, key, queue.size());
+            command.fail();
+        }
+        return command.future;
+    }
+
+    /**
+     * 等待第一条命令最多pollMillis，再在windowMillis内继续攒批，最多maxBatchSize条
+     *
+     * @param windowMillis 0表示只取出已在队列中的命令
+     */
+    void poll(List<Command<?>> commands, long pollMillis, long windowMillis) throws InterruptedException {
+        Command<?> first = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        commands.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        while (commands.size() < maxBatchSize) {
+            if (queue.drainTo(commands, maxBatchSize - commands.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || closed) {
+                break;
+            }
+            Command<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            commands.add(next);
+        }
+    }
+
+    /**
+     * 在当前线程执行队列中剩余的全部命令，应在close之后调用
+     */
+    void drain() {
+        List<Command<?>> commands = new ArrayList<Command<?>>(maxBatchSize);
+        while (queue.drainTo(commands, maxBatchSize) > 0) {
+            execute(commands);
+            commands.clear();
+        }
+    }
+
+    void execute(List<Command<?>> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        List<Command<?>> reads = new ArrayList<Command<?>>(commands.size());
+        List<Command<?>> masterReads = new ArrayList<Command<?>>();
+        List<Command<?>> writes = new ArrayList<Command<?>>(commands.size());
+        for (Command<?> command : commands) {
+            if (command.write) {
+                writes.add(command);
+            } else {
+                (redisCache.recentlyWritten(command.key) ? masterReads : reads).add(command);
+            }
+        }
+        if (!masterReads.isEmpty()) {
+            executeReads(masterReads, true);
+        }
+        if (!reads.isEmpty()) {
+            executeReads(reads, false);
+        }
+        if (!writes.isEmpty()) {
+            executeWrites(writes);
+        }
+    }
+
+    /**
+     * @param fromMaster 在master上读取，使用写熔断器
+     */
+    private void executeReads(List<Command<?>> commands, boolean fromMaster) {
+        CircuitBreaker circuitBreaker = fromMaster ? redisCache.getWriteCircuitBreaker() : redisCache.getReadCircuitBreaker();
+        long stime = System.nanoTime();
+        try {
+            if (fromMaster) {
+                redisCache.pipelineReadFromMaster(keys(commands), (pipeline, i) -> commands.get(i).apply(pipeline));
+            } else {
+                redisCache.pipelineRead(keys(commands), (pipeline, i) -> commands.get(i).apply(pipeline));
+            }
+            complete(commands);
+        } catch (CircuitBreakerOpenException e) {
+            // 熔断中快速失败，不记录异常
+            fail(commands);
+        } catch (Exception e) {
+            LOGGER.error("{} read error, size={}", name, commands.size(), e);
+            redisCache.getMetrics().recordError(readCommand, e);
+            circuitBreaker.onError(e);
+            fail(commands);
+        } finally {
+            redisCache.getMetrics().recordLatency(readCommand, System.nanoTime() - stime);
+            circuitBreaker.onComplete(System.nanoTime() - stime);
+        }
+    }
+
+    private void executeWrites(List<Command<?>> commands) {
+        long stime = System.nanoTime();
+        try {
+            redisCache.pipelineWrite(keys(commands), (pipeline, i) -> commands.get(i).apply(pipeline));
+            complete(commands);
+        } catch (CircuitBreakerOpenException e) {
+            // 熔断中快速失败，不记录异常
+            fail(commands);
+        } catch (Exception e) {
+            LOGGER.error("{} write error, size={}", name, commands.size(), e);
+            redisCache.getMetrics().recordError(writeCommand, e);
+            redisCache.getWriteCircuitBreaker().onError(e);
+            fail(commands);
+        } finally {
+            redisCache.getMetrics().recordLatency(writeCommand, System.nanoTime() - stime);
+            redisCache.getWriteCircuitBreaker().onComplete(System.nanoTime() - stime);
+            for (Command<?> write : commands) {
+                redisCache.afterWrite(write.key);
+            }
+        }
+    }
+
+    private static List<String> keys(List<Command<?>> commands) {
+        List<String> keys = new ArrayList<String>(commands.size());
+        for (Command<?> command : commands) {
+            keys.add(command.key);
+        }
+        return keys;
+    }
+
+    private static void complete(List<Command<?>> commands) {
+        for (Command<?> command : commands) {
+            command.complete();
+        }
+    }
+
+    private static void fail(List<Command<?>> commands) {
+        for (Command<?> command : commands) {
+            command.fail();
+        }
+    }
+
+    /**
+     * 向pipeline写入命令，返回sync后获取结果的Supplier
+     */
+    interface PipelineCall<T> {
+        Supplier<T> apply(Pipeline pipeline);
+    }
+
+    /**
+     * 命令成功后的回调（在消费线程中执行）
+     */
+    interface Callback<T> {
+        void onSuccess(T value);
+    }
+
+    static final class Command<T> {
+
+        private final boolean write;
+
+        private final String key;
+
+        private final T fallback;
+
+        private final PipelineCall<T> call;
+
+        private final Callback<T> callback;
+
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        private Supplier<T> result;
+
+        Command(boolean write, String key, T fallback, PipelineCall<T> call, Callback<T> callback) {
+            this.write = write;
+            this.key = key;
+            this.fallback = fallback;
+            this.call = call;
+            this.callback = callback;
+        }
+
+        Supplier<T> apply(Pipeline pipeline) {
+            result = call.apply(pipeline);
+            return result;
+        }
+
+        void complete() {
+            T value;
+            try {
+                value = result.get();
+            } catch (Exception e) {
+                LOGGER.error("redis pipeline command error, key={}", key, e);
+                fail();
+                return;
+            }
+            if (callback != null) {
+                callback.onSuccess(value);
+            }
+            future.complete(value);
+        }
+
+        void fail() {
+            future.complete(fallback);
+        }
+    }
+}
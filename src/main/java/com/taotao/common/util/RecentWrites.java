@@ -0,0 +1,50 @@
+package com.taotao.common.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：本JVM最近写入过的key（read-your-writes）
+ * <p/>
+ * RedisCache写入时记录key，windowMillis内对这些key的读取改走master，其余读取仍走只读分片，
+ * windowMillis应大于主从复制延迟。超过maxSize时按LRU淘汰，被淘汰的key回到只读分片读取。
+ * 单key读取、mget/mhgetAll/mgetObject、RedisCacheAsync的读取、hscan/sscan（按创建迭代器时判断）都按此路由；
+ * scan/parallelScan按节点遍历全部key，不按key路由。
+ * <pre>
+ * &lt;property name="recentWrites"&gt;
+ *     &lt;bean class="com.taotao.common.util.RecentWrites"&gt;
+ *         &lt;constructor-arg value="100000"/&gt;
+ *         &lt;constructor-arg value="1000"/&gt;
+ *     &lt;/bean&gt;
+ * &lt;/property&gt;
+ * </pre>
+ */
+public class RecentWrites {
+
+    private final Cache<String, Boolean> keys;
+
+    /**
+     * @param maxSize      最多记录的key数量
+     * @param windowMillis 写入后从master读取的毫秒数
+     */
+    public RecentWrites(long maxSize, long windowMillis) {
+        this.keys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(windowMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public void record(String key) {
+        keys.put(key, Boolean.TRUE);
+    }
+
+    public boolean contains(String key) {
+        return keys.getIfPresent(key) != null;
+    }
+
+    public long size() {
+        return keys.size();
+    }
+}
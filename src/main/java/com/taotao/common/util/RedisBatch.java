@@ -0,0 +1,163 @@
+package com.taotao.common.util;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：RedisCache批量写入构建器
+ * <p/>
+ * 所有加入的命令在execute时按写入分片分组，每个分片一次pipeline提交，带过期时间的写入为单条原子命令
+ * （SETEX或lua脚本），execute返回的结果与加入命令的顺序一一对应。
+ * 值的压缩与过期时间的随机抖动与RedisCache单条写入一致；lpush/rpush/sadd的元素列表不能为空。
+ * <pre>
+ * List&lt;Object&gt; results = redisCache.batch()
+ *         .rpush("ORDER_IDS", 3600, ids)
+ *         .set("ORDER_SYNC_TIME", now, 3600)
+ *         .execute();
+ * </pre>
+ */
+public class RedisBatch {
+
+    /**
+     * 批量命令，向pipeline写入命令并返回该逻辑命令的结果（pipeline sync之后才可获取）
+     */
+    interface Command {
+        Supplier<?> apply(Pipeline pipeline);
+    }
+
+    private final RedisCache redisCache;
+
+    private final List<Command> commands = new ArrayList<Command>();
+
+    /**
+     * 批量中涉及的key，执行后用于失效本地缓存
+     */
+    private final List<String> keys = new ArrayList<String>();
+
+    RedisBatch(RedisCache redisCache) {
+        this.redisCache = redisCache;
+    }
+
+    public RedisBatch set(final String key, final String value, final int seconds) {
+        final int ttl = redisCache.jitter(seconds);
+        final ValueCompressor compressor = redisCache.getCompressor();
+        if (compressor == null) {
+            add(key, pipeline -> pipeline.setex(key, ttl, value)::get);
+        } else {
+            add(key, pipeline -> pipeline.setex(SafeEncoder.encode(key), ttl, compressor.encode(value))::get);
+        }
+        return this;
+    }
+
+    public RedisBatch del(final String key) {
+        add(key, pipeline -> pipeline.del(key)::get);
+        return this;
+    }
+
+    public RedisBatch lpush(final String key, final int seconds, final String... strings) {
+        checkNotEmpty("lpush", key, strings);
+        final int ttl = redisCache.jitter(seconds);
+        add(key, pipeline -> RedisScripts.pushExpire(pipeline, "LPUSH", key, ttl, strings));
+        return this;
+    }
+
+    public RedisBatch rpush(final String key, final int seconds, final String... strings) {
+        checkNotEmpty("rpush", key, strings);
+        final int ttl = redisCache.jitter(seconds);
+        add(key, pipeline -> RedisScripts.pushExpire(pipeline, "RPUSH", key, ttl, strings));
+        return this;
+    }
+
+    public RedisBatch sadd(final String key, final int seconds, final String... members) {
+        checkNotEmpty("sadd", key, members);
+        final int ttl = redisCache.jitter(seconds);
+        add(key, pipeline -> RedisScripts.pushExpire(pipeline, "SADD", key, ttl, members));
+        return this;
+    }
+
+    public RedisBatch srem(final String key, final String... members) {
+        add(key, pipeline -> pipeline.srem(key, members)::get);
+        return this;
+    }
+
+    public RedisBatch hset(final String key, final String field, final String value, final int seconds) {
+        final int ttl = redisCache.jitter(seconds);
+        final ValueCompressor compressor = redisCache.getCompressor();
+        if (compressor == null) {
+            add(key, pipeline -> RedisScripts.hsetExpire(pipeline, key, field, value, ttl));
+        } else {
+            add(key, pipeline -> RedisScripts.hsetExpire(pipeline, SafeEncoder.encode(key), SafeEncoder.encode(field),
+                    compressor.encode(value), ttl));
+        }
+        return this;
+    }
+
+    public RedisBatch hmset(final String key, final Map<String, String> hash) {
+        final ValueCompressor compressor = redisCache.getCompressor();
+        if (compressor == null) {
+            add(key, pipeline -> pipeline.hmset(key, hash)::get);
+            return this;
+        }
+        final Map<byte[], byte[]> binaryHash = new HashMap<byte[], byte[]>(hash.size() * 2);
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            binaryHash.put(SafeEncoder.encode(entry.getKey()), compressor.encode(entry.getValue()));
+        }
+        add(key, pipeline -> pipeline.hmset(SafeEncoder.encode(key), binaryHash)::get);
+        return this;
+    }
+
+    public RedisBatch hdel(final String key, final String... fields) {
+        add(key, pipeline -> pipeline.hdel(key, fields)::get);
+        return this;
+    }
+
+    public RedisBatch expire(final String key, final int seconds) {
+        add(key, pipeline -> pipeline.expire(key, seconds)::get);
+        return this;
+    }
+
+    /**
+     * 一次pipeline提交所有命令
+     *
+     * @return 每条命令的结果；没有命令时返回空列表，缓存未启用或执行异常时返回null
+     */
+    public List<Object> execute() {
+        if (commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return redisCache.executeBatch(this);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    List<Command> getCommands() {
+        return commands;
+    }
+
+    List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * 空的元素列表无法组成合法的脚本调用，加入批量时直接拒绝
+     */
+    private static void checkNotEmpty(String command, String key, String... values) {
+        if (values == null || values.length == 0) {
+            throw new IllegalArgumentException(command + "至少需要一个元素, key=" + key);
+        }
+    }
+
+    private void add(String key, Command command) {
+        keys.add(key);
+        commands.add(command);
+    }
+}
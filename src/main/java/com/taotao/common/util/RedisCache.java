@@ -1,25 +1,91 @@
 package com.taotao.common.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.taotao.common.util.CircuitBreaker.CircuitBreakerOpenException;
+import com.taotao.common.util.backend.RedisBackend;
+import com.taotao.common.util.backend.RedisBackend.JedisCallback;
+import com.taotao.common.util.backend.RedisBackend.KeyCallback;
+import com.taotao.common.util.backend.RedisBackend.PipelineCallback;
+import com.taotao.common.util.backend.ShardedRedisBackend;
+import com.taotao.common.util.serializer.BinarySerializer;
+import com.taotao.common.util.serializer.Serializer;
+import com.taotao.common.util.metrics.RedisMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.util.SafeEncoder;
 
-import javax.annotation.Resource;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Component("redisCache")
 public class RedisCache {
+
+	private static final String LOAD_LEASE_SUFFIX = ":load_lease";
+
+	private static final long LOAD_LEASE_POLL_MILLIS = 50L;
+
+	private static final String STALE_SUFFIX = ":stale";
+
+	private static final String READ_POOL = "readShardedJedisPool";
+
+	private static final String WRITE_POOL = "writeJedisPool";
+
+	private static final String MIRROR_POOL = "mirrorWrite";
+
+	private static final String MIRROR_VERSION_SUFFIX = ":mirror_version";
+
+	/**
+	 * 双写复制版本key保留1天，超过1天的乱序复制不再比较版本
+	 */
+	private static final int MIRROR_VERSION_SECONDS = 86400;
+
+	/**
+	 * get使用的无捕获回调，key由backend作为参数传入，避免每次调用分配回调对象
+	 */
+	private static final KeyCallback<String> GET = (jedis, key) -> jedis.get(key);
+
+	private static final KeyCallback<byte[]> GET_BINARY = (jedis, key) -> jedis.get(SafeEncoder.encode(key));
 	
-	@Resource(name="readShardedJedisPool")
+	@Autowired(required = false)
+	@Qualifier("readShardedJedisPool")
 	private ShardedJedisPool readShardedJedisPool;
 
-	@Resource(name="writeJedisPool")
+	@Autowired(required = false)
+	@Qualifier("writeJedisPool")
 	private JedisPool writeJedisPool;
 
 	/**
@@ -27,11 +93,129 @@ public class RedisCache {
 	 */
 	private int seconds = 3600;
 
+	/**
+	 * getOrLoad跨JVM加载租约秒数，0表示只在JVM内合并
+	 */
+	private int loadLeaseSeconds = 0;
+
+	/**
+	 * getOrLoad过期副本多保留的秒数，0表示不保留过期副本
+	 */
+	private int staleSeconds = 0;
+
+	/**
+	 * 写入过期时间随机增加的最大百分比（set/hset/lpush/rpush/sadd/setObject/msetObject），0表示不抖动
+	 */
+	private int ttlJitterPercent = 0;
+
+	/**
+	 * getOrLoad提前刷新系数（XFetch beta），0表示不提前刷新，一般取1
+	 */
+	private double earlyRefreshBeta = 0;
+
 	/**
 	 * 是否启用缓存
 	 */
 	private boolean isEnable = false;
 
+	/**
+	 * 多分片并行读取线程池
+	 */
+	private final ExecutorService shardReadExecutor = Executors.newCachedThreadPool(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("redis-shard-read-%d").build());
+
+	/**
+	 * 进程内一级缓存，为空时不启用
+	 */
+	private NearCache nearCache;
+
+	/**
+	 * 一级缓存跨节点失效通知，为空时只失效本地
+	 */
+	private NearCacheInvalidationBus invalidationBus;
+
+	/**
+	 * 热点key检测，为空时不检测
+	 */
+	private HotKeyDetector hotKeyDetector;
+
+	/**
+	 * 字符串值压缩，为空时不压缩
+	 */
+	private ValueCompressor compressor;
+
+	/**
+	 * 命令耗时、连接等待、异常及值大小指标
+	 */
+	private RedisMetrics metrics = RedisMetrics.NOOP;
+
+	/**
+	 * 对象值序列化方式
+	 */
+	private Serializer serializer = new BinarySerializer();
+
+	/**
+	 * 只读分片连接池熔断器，默认不熔断
+	 */
+	private CircuitBreaker readCircuitBreaker = CircuitBreaker.disabled(READ_POOL);
+
+	/**
+	 * master连接池熔断器，默认不熔断
+	 */
+	private CircuitBreaker writeCircuitBreaker = CircuitBreaker.disabled(WRITE_POOL);
+
+	/**
+	 * 写入拓扑：MASTER 全部写入writeJedisPool，SHARDED 按key写入shardedWritePool中对应分片的master
+	 */
+	private WriteMode writeMode = WriteMode.MASTER;
+
+	/**
+	 * 按key分片的master连接池，writeMode为SHARDED或开启双写时必须配置
+	 */
+	private ShardedWritePool shardedWritePool;
+
+	/**
+	 * 迁移期间双写：每次写入成功后异步把key复制到另一套写入拓扑（MASTER与SHARDED互为备份），
+	 * 须同时配置writeJedisPool和shardedWritePool，不支持自定义backend
+	 */
+	private boolean dualWrite;
+
+	/**
+	 * 双写复制熔断器，另一套拓扑不可用时快速丢弃复制，不影响主写入
+	 */
+	private CircuitBreaker mirrorCircuitBreaker = new CircuitBreaker(MIRROR_POOL);
+
+	/**
+	 * 双写复制线程池，首次复制时创建；队列满时丢弃复制并记录异常，切换前通过mirror补齐
+	 */
+	private volatile ExecutorService mirrorExecutor;
+
+	/**
+	 * 双写复制的目标拓扑
+	 */
+	private volatile RedisBackend mirrorBackend;
+
+	/**
+	 * read-your-writes：本JVM最近写入过的key从master读取，为空时全部从只读分片读取
+	 */
+	private RecentWrites recentWrites;
+
+	/**
+	 * 连接拓扑，为空时由readShardedJedisPool、writeJedisPool、shardedWritePool组成客户端分片拓扑；
+	 * 配置ClusterRedisBackend时使用Redis Cluster，无需配置上述连接池
+	 */
+	private volatile RedisBackend backend;
+
+	/**
+	 * getOrLoad JVM内并发加载合并
+	 */
+	private final SingleFlight<String> loadFlight = new SingleFlight<String>();
+
+	/**
+	 * getOrLoad每个key最近一次加载耗时，用于提前刷新
+	 */
+	private final Cache<String, Long> loadCostMillis = CacheBuilder.newBuilder().maximumSize(10000).build();
+
 	private Logger logger = LoggerFactory.getLogger(RedisCache.class);
 
 	/**
@@ -41,20 +225,44 @@ public class RedisCache {
 	 */
 	public String get(String key) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
-			long stime = System.currentTimeMillis();
+			NearCache localCache = localCache(key);
+			if (localCache != null) {
+				String value = localCache.get(key);
+				if (value != null) {
+					return value;
+				}
+			}
+			if (recentlyWritten(key)) {
+				return get(key, true);
+			}
+			long generation = localCache != null ? localCache.generation(key) : 0L;
+			// 未配置指标、未开启熔断且未开启debug日志时没有地方使用耗时，不读取时钟
+			boolean timed = metrics != RedisMetrics.NOOP || readCircuitBreaker.isEnabled() || logger.isDebugEnabled();
+			long stime = timed ? System.nanoTime() : 0L;
 			try {
-				jedis = readShardedJedisPool.getResource();
-				logger.debug("redis job id={}, get a resource from the pool. key={}, costTime={}ms" ,new Object[]{stime, key, System.currentTimeMillis() - stime});
-				return jedis.get(key);
+				String value = compressor == null ? readKey(key, GET) : compressor.decode(readKey(key, GET_BINARY));
+				if (value != null) {
+					metrics.recordPayloadSize("get", value.length());
+				}
+				if (localCache != null) {
+					localCache.put(key, value, generation);
+				}
+				return value;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("get error key=" + key, e);
+				logger.error("get error key={}", key, e);
+				metrics.recordError("get", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				logger.debug("redis job id={}, get the value of the specified key. key={}, costTime={}ms" ,new Object[]{stime, key, System.currentTimeMillis() - stime});
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
+				if (timed) {
+					long costTime = System.nanoTime() - stime;
+					metrics.recordLatency("get", costTime);
+					readCircuitBreaker.onComplete(costTime);
+					if (logger.isDebugEnabled()) {
+						logger.debug("redis get key={}, costTime={}us", key, TimeUnit.NANOSECONDS.toMicros(costTime));
+					}
 				}
-				logger.debug("redis job id={}, return a resource from the pool. key={}, costTime={}ms" ,new Object[]{stime, key,System.currentTimeMillis() - stime});
 			}
 		}
 		return null;
@@ -69,17 +277,7 @@ public class RedisCache {
 		if (isEnable) {
 			if(fromMaster){
 				/*指定从master redis读取记录，排除可能存在master短时间有变动未同步到slave，从集群中读取的并不是最新内容*/
-				Jedis jedis = null;
-				try {
-					jedis = writeJedisPool.getResource();
-					return jedis.get(key);
-				} catch (Exception e) {
-					logger.error("get error key=" + key, e);
-				} finally {
-					if(null != jedis){
-						writeJedisPool.returnResource(jedis);
-					}
-				}
+				return readFromMaster("get", key, jedis -> compressor == null ? jedis.get(key) : compressor.decode(jedis.get(SafeEncoder.encode(key))));
 			}else{
 				return get(key);
 			}
@@ -87,6 +285,169 @@ public class RedisCache {
 		return null;
 	}
 	
+	/**
+	 * 根据 key 从缓存中获取数据，未命中时调用loader加载并写入缓存
+	 * 同一JVM内同一个key的并发未命中只调用一次loader；
+	 * loadLeaseSeconds大于0时通过setnx租约保证多个JVM间只有一个节点加载，
+	 * 其他节点等待加载结果，staleSeconds大于0时直接返回过期副本。
+	 * earlyRefreshBeta大于0时按XFetch算法在过期前概率性提前刷新，越接近过期、加载越慢，提前刷新概率越大。
+	 * @param key
+	 * @param seconds
+	 * @param loader 返回null时不写入缓存
+	 * @return
+	 */
+	public String getOrLoad(final String key, final int seconds, final Callable<String> loader) {
+		try {
+			if (!isEnable) {
+				return loader.call();
+			}
+			if (earlyRefreshBeta > 0) {
+				ValueWithTtl current = getWithTtl(key);
+				if (current != null && current.value != null) {
+					return shouldRefreshEarly(key, current.pttl) ? refreshEarly(key, seconds, loader, current.value) : current.value;
+				}
+			}
+			String value = get(key);
+			if (value != null) {
+				return value;
+			}
+			return loadFlight.execute(key, () -> load(key, seconds, loader));
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("load error key=" + key, e);
+		}
+	}
+
+	private String load(String key, int seconds, Callable<String> loader) throws Exception {
+		// 同一JVM内上一次加载可能刚刚完成
+		String value = get(key);
+		if (value != null || loadLeaseSeconds <= 0) {
+			return value != null ? value : loadAndSet(key, seconds, loader);
+		}
+
+		String leaseKey = key + LOAD_LEASE_SUFFIX;
+		String leaseToken = UUID.randomUUID().toString();
+		long deadline = System.currentTimeMillis() + loadLeaseSeconds * 1000L;
+		Long acquired;
+		while ((acquired = acquireLease(leaseKey, leaseToken, loadLeaseSeconds)) != null && acquired != 1) {
+			if (staleSeconds > 0) {
+				String stale = get(key + STALE_SUFFIX);
+				if (stale != null) {
+					return stale;
+				}
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				// 租约持有者未在租约时间内完成加载，自行加载
+				return loadAndSet(key, seconds, loader);
+			}
+			Thread.sleep(LOAD_LEASE_POLL_MILLIS);
+			value = get(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		if (acquired == null) {
+			// Redis异常或熔断中，无法判断是否有其他节点在加载，不再等待直接自行加载
+			return loadAndSet(key, seconds, loader);
+		}
+		try {
+			return loadAndSet(key, seconds, loader);
+		} finally {
+			// 只释放自己的租约，加载超过租约时间后租约可能已被其他节点获取
+			releaseLease(leaseKey, leaseToken);
+		}
+	}
+
+	/**
+	 * XFetch：-delta * beta * ln(random) >= 剩余存活时间 时提前刷新
+	 */
+	private boolean shouldRefreshEarly(String key, long pttl) {
+		Long delta = loadCostMillis.getIfPresent(key);
+		if (delta == null || pttl < 0) {
+			return false;
+		}
+		double random = 1.0D - ThreadLocalRandom.current().nextDouble();
+		return -delta * earlyRefreshBeta * Math.log(random) >= pttl;
+	}
+
+	/**
+	 * 提前刷新失败时继续返回当前值
+	 */
+	private String refreshEarly(final String key, final int seconds, final Callable<String> loader, String current) {
+		try {
+			String value = loadFlight.execute(key, () -> loadAndSet(key, seconds, loader));
+			return value != null ? value : current;
+		} catch (Exception e) {
+			logger.error("early refresh error key={}", key, e);
+			return current;
+		}
+	}
+
+	/**
+	 * 同一分片一次pipeline读取值和剩余存活毫秒数，本JVM最近写入过key时从master读取
+	 */
+	private ValueWithTtl getWithTtl(String key) {
+		boolean fromMaster = recentlyWritten(key);
+		CircuitBreaker circuitBreaker = fromMaster ? writeCircuitBreaker : readCircuitBreaker;
+		long stime = System.nanoTime();
+		try {
+			return read(key, fromMaster, jedis -> {
+				Pipeline pipeline = jedis.pipelined();
+				Response<byte[]> value = pipeline.get(SafeEncoder.encode(key));
+				Response<Long> pttl = pipeline.pttl(key);
+				pipeline.sync();
+				byte[] bytes = value.get();
+				String decoded = bytes == null ? null : compressor == null ? SafeEncoder.encode(bytes) : compressor.decode(bytes);
+				return new ValueWithTtl(decoded, pttl.get());
+			});
+		} catch (CircuitBreakerOpenException e) {
+			// 熔断中快速失败，不记录异常
+		} catch (Exception e) {
+			logger.error("getWithTtl error key={}", key, e);
+			metrics.recordError("getWithTtl", e);
+			circuitBreaker.onError(e);
+		} finally {
+			metrics.recordLatency("getWithTtl", System.nanoTime() - stime);
+			circuitBreaker.onComplete(System.nanoTime() - stime);
+		}
+		return null;
+	}
+
+	/**
+	 * SET NX EX 一条命令原子完成，只有新key才设置过期时间。
+	 * 如果key值已存在，仍然采用之前设置的过期时间。
+	 * @return 写入返回1，key已存在返回0
+	 */
+	private static long setnxEx(Jedis jedis, String key, String value, int seconds) {
+		return "OK".equals(jedis.set(key, value, "NX", "EX", seconds)) ? 1L : 0L;
+	}
+
+	private static class ValueWithTtl {
+		private final String value;
+		private final long pttl;
+
+		ValueWithTtl(String value, Long pttl) {
+			this.value = value;
+			this.pttl = pttl == null ? -1L : pttl;
+		}
+	}
+
+	private String loadAndSet(String key, int seconds, Callable<String> loader) throws Exception {
+		long stime = System.currentTimeMillis();
+		String value = loader.call();
+		if (earlyRefreshBeta > 0) {
+			loadCostMillis.put(key, System.currentTimeMillis() - stime);
+		}
+		if (value != null) {
+			set(key, value, seconds);
+			if (staleSeconds > 0) {
+				set(key + STALE_SUFFIX, value, seconds + staleSeconds);
+			}
+		}
+		return value;
+	}
+
 	/**
 	 * 加入新的key-value键值对（Set if Not eXists，只在key值不存在的情况下才设置）
 	 * 如果不指定时间，将使用默认seconds
@@ -105,29 +466,36 @@ public class RedisCache {
 	 * @return
 	 */
 	public Long setnx(String key, String value ,int seconds) {
+		Long result = trySetnx(key, value, seconds);
+		return result != null ? result : 0L;
+	}
+
+	/**
+	 * setnx，区分key已存在与异常
+	 * @return 设置成功返回1，key已存在返回0，异常、熔断中或未启用时返回null
+	 */
+	private Long trySetnx(String key, String value, int seconds) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				jedis = writeJedisPool.getResource();
-				long result = jedis.setnx(key, value);
-				if(result==1){
-					/*
-					 * 设置新key后才设置过期时间。
-					 * 如果key值已存在，仍然采用之前设置的过期时间。
-					 */
-					jedis.expire(key, seconds);
+				long result = write(key, jedis -> setnxEx(jedis, key, value, seconds));
+				logger.debug("{}-{}", key, result);
+				if (result == 1L) {
+					afterWrite(key);
 				}
-				logger.debug(key+"-"+result);
 				return result;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("setnx error key=" + key, e);
+				logger.error("setnx error key={}", key, e);
+				metrics.recordError("setnx", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("setnx", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
-		return 0L;
+		return null;
 	}
 	
 	/**
@@ -149,22 +517,31 @@ public class RedisCache {
 	 */
 	public Boolean set(String key, String value ,int seconds) {
 		if (isEnable) {
-			Jedis jedis = null;
-			long stime = System.currentTimeMillis();
+			long stime = System.nanoTime();
 			try {
-				jedis = writeJedisPool.getResource();
-				logger.debug("1.redis job id={}, get a resource from the pool.costTime={}ms", new Object[]{stime, System.currentTimeMillis() - stime});
-				jedis.set(key, value);
-				jedis.expire(key, seconds);
-				return true;
+				return write(key, jedis -> {
+					metrics.recordPayloadSize("set", value.length());
+					if (compressor == null) {
+						jedis.setex(key, jitter(seconds), value);
+					} else {
+						jedis.setex(SafeEncoder.encode(key), jitter(seconds), compressor.encode(value));
+					}
+					return true;
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("set error key=" + key, e);
+				logger.error("set error key={}", key, e);
+				metrics.recordError("set", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				logger.debug("2.redis job id={}, set the string value as value of the key. key={}, costTime={}ms" ,new Object[]{stime, key, System.currentTimeMillis() - stime});
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
+				afterWrite(key);
+				long costTime = System.nanoTime() - stime;
+				metrics.recordLatency("set", costTime);
+				writeCircuitBreaker.onComplete(costTime);
+				if (logger.isDebugEnabled()) {
+					logger.debug("redis set key={}, costTime={}us", key, TimeUnit.NANOSECONDS.toMicros(costTime));
 				}
-				logger.debug("3.redis job id={}, return a resource from the pool.costTime={}ms" ,new Object[]{stime, System.currentTimeMillis() - stime});
 			}
 		}
 		return false;
@@ -177,76 +554,109 @@ public class RedisCache {
 	 */
 	public Long del(String key) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.debug("remove the specified keys :" + key);
-				jedis = writeJedisPool.getResource();
-				return jedis.del(key);
+				logger.debug("remove the specified keys :{}", key);
+				return write(key, jedis -> jedis.del(key));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("del error key=" + key, e);
+				logger.error("del error key={}", key, e);
+				metrics.recordError("del", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("del", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
 		return null;
 	}
 
 	/**
-	 * 向list头部加入值
+	 * 向list头部加入值（元素及过期时间在一条lua脚本中原子写入）
 	 * @param key
 	 * @param strings
-	 * @return
+	 * @return 写入成功返回true，异常时返回false
 	 */
 	public Boolean lpush(String key, String... strings) {
+		return lpushAndGetLength(key, strings) != null;
+	}
+
+	/**
+	 * 向list头部加入值，并返回写入后list的长度
+	 * @param key
+	 * @param strings
+	 * @return 写入后list的长度，异常时返回null
+	 */
+	public Long lpushAndGetLength(String key, String... strings) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("add the string value to the head (LPUSH) of the list stored at key. key=" + key);
-				jedis = writeJedisPool.getResource();
-				for(String string:strings){
-					jedis.lpush(key, string);
-				}
-				jedis.expire(key, seconds);
-				return true;
+				logger.info("add the string value to the head (LPUSH) of the list stored at key. key={}", key);
+				return write(key, jedis -> {
+					if (strings.length > 0) {
+						return RedisScripts.pushExpire(jedis, "LPUSH", key, jitter(seconds), strings);
+					}
+					jedis.expire(key, jitter(seconds));
+					return jedis.llen(key);
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("lpush error key=" + key, e);
+				logger.error("lpush error key={}", key, e);
+				metrics.recordError("lpush", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("lpush", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
-		return false;
+		return null;
 	}
 	
 	/**
-	 * 向list尾部加入值
+	 * 向list尾部加入值（元素及过期时间在一条lua脚本中原子写入）
 	 * @param key
 	 * @param strings
-	 * @return
+	 * @return 写入成功返回true，异常时返回false
 	 */
 	public Boolean rpush(String key, String... strings) {
+		return rpushAndGetLength(key, strings) != null;
+	}
+
+	/**
+	 * 向list尾部加入值，并返回写入后list的长度
+	 * @param key
+	 * @param strings
+	 * @return 写入后list的长度，异常时返回null
+	 */
+	public Long rpushAndGetLength(String key, String... strings) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("add the string value to the tail (RPUSH) of the list stored at key. key=" + key);
-				jedis = writeJedisPool.getResource();
-				for(String string:strings){
-					jedis.rpush(key, string);
-				}
-				jedis.expire(key, seconds);
-				return true;
+				logger.info("add the string value to the tail (RPUSH) of the list stored at key. key={}", key);
+				return write(key, jedis -> {
+					if (strings.length > 0) {
+						return RedisScripts.pushExpire(jedis, "RPUSH", key, jitter(seconds), strings);
+					}
+					jedis.expire(key, jitter(seconds));
+					return jedis.llen(key);
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("rpush error key=" + key, e);
+				logger.error("rpush error key={}", key, e);
+				metrics.recordError("rpush", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("rpush", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
-		return false;
+		return null;
 	}
 	
 	/**
@@ -258,17 +668,22 @@ public class RedisCache {
 	 */
 	public List<String> lrange(String key, long start, long end) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			if (recentlyWritten(key)) {
+				return readFromMaster("lrange", key, jedis -> jedis.lrange(key, start, end));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("return the specified elements of the list stored at the specified key. key=" + key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.lrange(key, start, end);
+				logger.info("return the specified elements of the list stored at the specified key. key={}", key);
+				return read(key, jedis -> jedis.lrange(key, start, end));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("lrange error key=" + key, e);
+				logger.error("lrange error key={}", key, e);
+				metrics.recordError("lrange", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("lrange", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
@@ -281,49 +696,68 @@ public class RedisCache {
 	 */
 	public Long llen(String key) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			if (recentlyWritten(key)) {
+				return readFromMaster("llen", key, jedis -> jedis.llen(key));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("return the length of the list stored at the specified key. key=" + key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.llen(key);
+				logger.info("return the length of the list stored at the specified key. key={}", key);
+				return read(key, jedis -> jedis.llen(key));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("llen error key=" + key, e);
+				logger.error("llen error key={}", key, e);
+				metrics.recordError("llen", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("llen", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
 	}
 
 	/**
-	 * 向指定key的set集合中加入新成员
+	 * 向指定key的set集合中加入新成员（成员及过期时间在一条lua脚本中原子写入）
 	 * @param key
 	 * @param members
-	 * @param seconds
-	 * @return
+	 * @return 写入成功返回true，异常时返回false
 	 */
 	public Boolean sadd(String key, String... members) {
+		return saddAndGetCount(key, members) != null;
+	}
+
+	/**
+	 * 向指定key的set集合中加入新成员，并返回新加入的成员数量
+	 * @param key
+	 * @param members
+	 * @return 新加入的成员数量，异常时返回null
+	 */
+	public Long saddAndGetCount(String key, String... members) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("add the specified member to the set value stored at key. key=" + key);
-				jedis = writeJedisPool.getResource();
-				for(String member:members){
-					jedis.sadd(key, member);
-				}
-				jedis.expire(key, seconds);
-				return true;
+				logger.info("add the specified member to the set value stored at key. key={}", key);
+				return write(key, jedis -> {
+					if (members.length > 0) {
+						return RedisScripts.pushExpire(jedis, "SADD", key, jitter(seconds), members);
+					}
+					jedis.expire(key, jitter(seconds));
+					return 0L;
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("sadd error key=" + key, e);
+				logger.error("sadd error key={}", key, e);
+				metrics.recordError("sadd", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("sadd", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
-		return false;
+		return null;
 	}
 
 	/**
@@ -334,17 +768,23 @@ public class RedisCache {
 	 */
 	public Boolean sismember(String key, String member) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			recordRead(key);
+			if (recentlyWritten(key)) {
+				return readFromMaster("sismember", key, jedis -> jedis.sismember(key, member));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("if member is a member of the set stored at key. key=" + key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.sismember(key, member);
+				logger.info("if member is a member of the set stored at key. key={}", key);
+				return read(key, jedis -> jedis.sismember(key, member));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("sismenber error key=" + key, e);
+				logger.error("sismenber error key={}", key, e);
+				metrics.recordError("sismember", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("sismember", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
@@ -357,43 +797,66 @@ public class RedisCache {
 	 */
 	public Set<String> smembers(String key) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			if (recentlyWritten(key)) {
+				return readFromMaster("smembers", key, jedis -> jedis.smembers(key));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("return all the members (elements) of the set value stored at key. key=" + key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.smembers(key);
+				logger.info("return all the members (elements) of the set value stored at key. key={}", key);
+				NearCache localCache = localCache(key);
+				if (localCache != null) {
+					Set<String> members = localCache.smembers(key);
+					if (members != null) {
+						return members;
+					}
+				}
+				long generation = localCache != null ? localCache.generation(key) : 0L;
+				return read(key, jedis -> {
+					Set<String> members = jedis.smembers(key);
+					if (localCache != null) {
+						localCache.sput(key, members, generation);
+					}
+					return members;
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("smembers error key=" + key, e);
+				logger.error("smembers error key={}", key, e);
+				metrics.recordError("smembers", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("smembers", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
 	}
 
 	/**
-	 * 删除存储在key中指定member的集合成员
+	 * 删除存储在key中指定member的集合成员（单条SREM命令）
 	 * @param key
 	 * @param members
-	 * @return
+	 * @return 实际删除的成员个数
 	 */
 	public Long srem(String key, String... members) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("remove the specified member from the set value stored at key. key=" + key);
-				jedis = writeJedisPool.getResource();
-				for(String member:members){
-					jedis.srem(key, member);
+				logger.info("remove the specified member from the set value stored at key. key={}", key);
+				if (members.length == 0) {
+					return 0L;
 				}
+				return write(key, jedis -> jedis.srem(key, members));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("srem error key=" + key, e);
+				logger.error("srem error key={}", key, e);
+				metrics.recordError("srem", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("srem", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
 		return null;
@@ -406,17 +869,22 @@ public class RedisCache {
 	 */
 	public Long scard(String key) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			if (recentlyWritten(key)) {
+				return readFromMaster("scard", key, jedis -> jedis.scard(key));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("return the set cardinality (number of elements). key="+ key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.scard(key);
+				logger.info("return the set cardinality (number of elements). key={}", key);
+				return read(key, jedis -> jedis.scard(key));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("scard error key=" + key, e);
+				logger.error("scard error key={}", key, e);
+				metrics.recordError("scard", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("scard", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
@@ -433,19 +901,28 @@ public class RedisCache {
 	 */
 	public boolean hset(String key, String field, String value) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("set the specified hash field to the specified value. key="+ key);
-				jedis = writeJedisPool.getResource();
-				jedis.hset(key, field, value);
-				jedis.expire(key, seconds);
-				return true;
+				logger.info("set the specified hash field to the specified value. key={}", key);
+				return write(key, jedis -> {
+					metrics.recordPayloadSize("hset", value.length());
+					if (compressor == null) {
+						RedisScripts.hsetExpire(jedis, key, field, value, jitter(seconds));
+					} else {
+						RedisScripts.hsetExpire(jedis, SafeEncoder.encode(key), SafeEncoder.encode(field), compressor.encode(value), jitter(seconds));
+					}
+					return true;
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hset error key=" + key, e);
+				logger.error("hset error key={}", key, e);
+				metrics.recordError("hset", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hset", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
 		return false;
@@ -459,17 +936,41 @@ public class RedisCache {
 	 */
 	public String hget(String key, String field) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			if (recentlyWritten(key)) {
+				return readFromMaster("hget", key, jedis -> compressor == null ? jedis.hget(key, field)
+						: compressor.decode(jedis.hget(SafeEncoder.encode(key), SafeEncoder.encode(field))));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("retrieve the value associated to the specified field. key="+ key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.hget(key, field);
+				logger.info("retrieve the value associated to the specified field. key={}", key);
+				NearCache localCache = localCache(key);
+				if (localCache != null) {
+					String value = localCache.hget(key, field);
+					if (value != null) {
+						return value;
+					}
+				}
+				long generation = localCache != null ? localCache.generation(key) : 0L;
+				return read(key, jedis -> {
+					String value = compressor == null ? jedis.hget(key, field)
+							: compressor.decode(jedis.hget(SafeEncoder.encode(key), SafeEncoder.encode(field)));
+					if (value != null) {
+						metrics.recordPayloadSize("hget", value.length());
+					}
+					if (localCache != null) {
+						localCache.hput(key, field, value, generation);
+					}
+					return value;
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hget error key=" + key, e);
+				logger.error("hget error key={}", key, e);
+				metrics.recordError("hget", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hget", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
@@ -483,17 +984,20 @@ public class RedisCache {
 	 */
 	public Long hdel(String key, String field) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("remove the specified field from an hash stored at key. key="+ key);
-				jedis = writeJedisPool.getResource();
-				return jedis.hdel(key, field);
+				logger.info("remove the specified field from an hash stored at key. key={}", key);
+				return write(key, jedis -> jedis.hdel(key, field));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hdel error key=" + key, e);
+				logger.error("hdel error key={}", key, e);
+				metrics.recordError("hdel", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hdel", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
 		return null;
@@ -507,17 +1011,23 @@ public class RedisCache {
 	 */
 	public Long hlen(String key) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			if (recentlyWritten(key)) {
+				Long len = readFromMaster("hlen", key, jedis -> jedis.hlen(key));
+				return len == null ? 0L : len;
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("the number of items in a hash. key" + key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.hlen(key);
+				logger.info("the number of items in a hash. key={}", key);
+				return read(key, jedis -> jedis.hlen(key));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hlen error key=" + key, e);
+				logger.error("hlen error key={}", key, e);
+				metrics.recordError("hlen", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hlen", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return (long) 0;
@@ -530,18 +1040,47 @@ public class RedisCache {
 	 */
 	public Map<String, String> hgetAll(String key) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			recordRead(key);
+			if (recentlyWritten(key)) {
+				return readFromMaster("hgetAll", key, jedis -> compressor == null ? jedis.hgetAll(key)
+						: decodeHash(jedis.hgetAll(SafeEncoder.encode(key))));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("all the fields and associated values in a hash. key="+ key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.hgetAll(key);
+				logger.info("all the fields and associated values in a hash. key={}", key);
+				return read(key, jedis -> {
+					if (compressor == null) {
+						return jedis.hgetAll(key);
+					}
+					return decodeHash(jedis.hgetAll(SafeEncoder.encode(key)));
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hgetAll error key=" + key, e);
+				logger.error("hgetAll error key={}", key, e);
+				metrics.recordError("hgetAll", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hgetAll", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 返回Key对应的hash表中所有键值对（指定从master读取）
+	 * @param key
+	 * @param fromMaster
+	 * @return
+	 */
+	public Map<String, String> hgetAll(String key, boolean fromMaster) {
+		if (isEnable) {
+			if (fromMaster) {
+				return readFromMaster("hgetAll", key, jedis -> compressor == null ? jedis.hgetAll(key)
+						: decodeHash(jedis.hgetAll(SafeEncoder.encode(key))));
 			}
+			return hgetAll(key);
 		}
 		return null;
 	}
@@ -554,17 +1093,29 @@ public class RedisCache {
 	 */
 	public List<String> hmget(String key, String... fields) {
 		if (isEnable) {
-			ShardedJedis jedis = null;
+			recordRead(key);
+			if (recentlyWritten(key)) {
+				return readFromMaster("hmget", key, jedis -> compressor == null ? jedis.hmget(key, fields)
+						: decodeValues(jedis.hmget(SafeEncoder.encode(key), SafeEncoder.encodeMany(fields))));
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("retrieve the values associated to the specified fields. key=" + key);
-				jedis = readShardedJedisPool.getResource();
-				return jedis.hmget(key, fields);
+				logger.info("retrieve the values associated to the specified fields. key={}", key);
+				return read(key, jedis -> {
+					if (compressor == null) {
+						return jedis.hmget(key, fields);
+					}
+					return decodeValues(jedis.hmget(SafeEncoder.encode(key), SafeEncoder.encodeMany(fields)));
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hmget error key=" + key, e);
+				logger.error("hmget error key={}", key, e);
+				metrics.recordError("hmget", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					readShardedJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hmget", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
@@ -578,60 +1129,1173 @@ public class RedisCache {
 	 */
 	public String hmset(String key, Map<String, String> hash) {
 		if (isEnable) {
-			Jedis jedis = null;
+			long stime = System.nanoTime();
 			try {
-				logger.info("retrieve the values associated to the specified fields. key=" + key);
-				jedis = writeJedisPool.getResource();
-				return jedis.hmset(key, hash);
+				logger.info("retrieve the values associated to the specified fields. key={}", key);
+				return write(key, jedis -> {
+					if (compressor == null) {
+						return jedis.hmset(key, hash);
+					}
+					Map<byte[], byte[]> binaryHash = new HashMap<byte[], byte[]>(hash.size() * 2);
+					for (Map.Entry<String, String> entry : hash.entrySet()) {
+						binaryHash.put(SafeEncoder.encode(entry.getKey()), compressor.encode(entry.getValue()));
+					}
+					return jedis.hmset(SafeEncoder.encode(key), binaryHash);
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("hmget error key=" + key, e);
+				logger.error("hmget error key={}", key, e);
+				metrics.recordError("hmset", e);
+				writeCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("hmset", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
 			}
 		}
 		return null;
 	}
 
 	/**
-	 * 重置缓存过期时间（自定义时间）
+	 * 根据 key 从缓存中获取对象（二进制值，使用serializer反序列化）
 	 * @param key
+	 * @param type
 	 * @return
 	 */
-	public Long expire(String key, int seconds) {
+	public <T> T getObject(String key, Class<T> type) {
 		if (isEnable) {
-			Jedis jedis = null;
+			recordRead(key);
+			if (recentlyWritten(key)) {
+				return readFromMaster("getObject", key, jedis -> {
+					byte[] bytes = jedis.get(SafeEncoder.encode(key));
+					return bytes == null ? null : serializer.deserialize(bytes, type);
+				});
+			}
+			long stime = System.nanoTime();
 			try {
-				logger.info("set a timeout on the specified key. key=" + key);
-				jedis = writeJedisPool.getResource();
-				return jedis.expire(key, seconds);
+				return read(key, jedis -> {
+					byte[] bytes = jedis.get(SafeEncoder.encode(key));
+					if (bytes != null) {
+						metrics.recordPayloadSize("getObject", bytes.length);
+					}
+					return bytes == null ? null : serializer.deserialize(bytes, type);
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
 			} catch (Exception e) {
-				logger.error("expire error key=" + key, e);
+				logger.error("getObject error key={}", key, e);
+				metrics.recordError("getObject", e);
+				readCircuitBreaker.onError(e);
 			} finally {
-				if(null != jedis){
-					writeJedisPool.returnResource(jedis);
-				}
+				metrics.recordLatency("getObject", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
 			}
 		}
 		return null;
 	}
-	
+
 	/**
-	 * 重置缓存过期时间（默认时间）
+	 * 加入新的key-对象键值对（使用serializer序列化为二进制值）
+	 * 如果不指定时间，将使用默认seconds
 	 * @param key
+	 * @param value
 	 * @return
 	 */
-	public Long expire(String key) {
-		return expire(key, seconds);
-	}
-	
-	public int getSeconds() {
-		return seconds;
+	public Boolean setObject(String key, Object value) {
+		return setObject(key, value, seconds);
 	}
 
-	public void setSeconds(int seconds) {
-		this.seconds = seconds;
+	/**
+	 * 加入新的key-对象键值对（使用serializer序列化为二进制值）
+	 * @param key
+	 * @param value
+	 * @param seconds
+	 * @return
+	 */
+	public Boolean setObject(String key, Object value, int seconds) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				byte[] bytes = serializer.serialize(value);
+				metrics.recordPayloadSize("setObject", bytes.length);
+				return write(key, jedis -> {
+					jedis.setex(SafeEncoder.encode(key), jitter(seconds), bytes);
+					return true;
+				});
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("setObject error key={}", key, e);
+				metrics.recordError("setObject", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("setObject", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 批量获取多个key的对象，按分片分组后每个分片一次pipeline，多分片并行读取
+	 * @param keys
+	 * @param type
+	 * @return 按传入顺序排列的key-对象，不存在的key对应null
+	 */
+	public <T> Map<String, T> mgetObject(Collection<String> keys, Class<T> type) {
+		Map<String, byte[]> values = multiRead("mgetObject", keys, (pipeline, key) -> pipeline.get(SafeEncoder.encode(key)));
+		if (values == null) {
+			return null;
+		}
+		Map<String, T> result = new LinkedHashMap<String, T>(values.size() * 2);
+		for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+			result.put(entry.getKey(), entry.getValue() == null ? null : serializer.deserialize(entry.getValue(), type));
+		}
+		return result;
+	}
+
+	/**
+	 * 批量加入key-对象键值对，每个写入分片一次pipeline
+	 * @param values
+	 * @param seconds
+	 * @return
+	 */
+	public Boolean msetObject(final Map<String, ?> values, final int seconds) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			final List<String> keys = new ArrayList<String>(values.keySet());
+			try {
+				pipelineWrite(keys, (pipeline, i) -> pipeline.setex(SafeEncoder.encode(keys.get(i)), jitter(seconds), serializer.serialize(values.get(keys.get(i))))::get);
+				return true;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("msetObject error keys={}", values.keySet(), e);
+				metrics.recordError("msetObject", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("msetObject", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				for (String key : keys) {
+					afterWrite(key);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 批量获取多个key的值，按分片分组后每个分片一次pipeline，多分片并行读取
+	 * @param keys
+	 * @return 按传入顺序排列的key-value，不存在的key对应null
+	 */
+	public Map<String, String> mget(String... keys) {
+		return mget(Arrays.asList(keys));
+	}
+
+	/**
+	 * 批量获取多个key的值，按分片分组后每个分片一次pipeline，多分片并行读取
+	 * @param keys
+	 * @return 按传入顺序排列的key-value，不存在的key对应null
+	 */
+	public Map<String, String> mget(Collection<String> keys) {
+		if (compressor == null) {
+			return multiRead("mget", keys, (pipeline, key) -> pipeline.get(key));
+		}
+		Map<String, byte[]> values = multiRead("mget", keys, (pipeline, key) -> pipeline.get(SafeEncoder.encode(key)));
+		if (values == null) {
+			return null;
+		}
+		Map<String, String> result = new LinkedHashMap<String, String>(values.size() * 2);
+		for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+			result.put(entry.getKey(), compressor.decode(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * 批量返回多个Key对应的hash表中所有键值对，按分片分组后每个分片一次pipeline，多分片并行读取
+	 * @param keys
+	 * @return 按传入顺序排列的key-hash，不存在的key对应空map
+	 */
+	public Map<String, Map<String, String>> mhgetAll(Collection<String> keys) {
+		if (compressor == null) {
+			return multiRead("mhgetAll", keys, (pipeline, key) -> pipeline.hgetAll(key));
+		}
+		Map<String, Map<byte[], byte[]>> values = multiRead("mhgetAll", keys, (pipeline, key) -> pipeline.hgetAll(SafeEncoder.encode(key)));
+		if (values == null) {
+			return null;
+		}
+		Map<String, Map<String, String>> result = new LinkedHashMap<String, Map<String, String>>(values.size() * 2);
+		for (Map.Entry<String, Map<byte[], byte[]>> entry : values.entrySet()) {
+			result.put(entry.getKey(), decodeHash(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * 解码二进制读取的hash（解压压缩过的值）
+	 */
+	private Map<String, String> decodeHash(Map<byte[], byte[]> hash) {
+		Map<String, String> result = new HashMap<String, String>(hash.size() * 2);
+		for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+			result.put(SafeEncoder.encode(entry.getKey()), compressor.decode(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * 以HSCAN分页遍历指定key的hash，遍历到页尾时才读取下一页，用于代替大hash的hgetAll
+	 * @param key
+	 * @param pageSize 每页的COUNT提示值
+	 * @return 缓存未启用时返回空迭代器；读取某一页失败时，迭代器抛出IllegalStateException。
+	 *         创建迭代器时本JVM最近写入过key，则整个遍历都从master读取（游标不能在节点间混用）
+	 */
+	public RedisScanIterator<Map.Entry<String, String>> hscan(final String key, int pageSize) {
+		final ScanParams params = new ScanParams().count(pageSize);
+		final boolean fromMaster = recentlyWritten(key);
+		return new RedisScanIterator<Map.Entry<String, String>>(isEnable ? 1 : 0, (node, cursor) -> scanPage("hscan", key, fromMaster, () -> read(key, fromMaster, jedis -> {
+			if (compressor == null) {
+				return jedis.hscan(key, cursor, params);
+			}
+			ScanResult<Map.Entry<byte[], byte[]>> page = jedis.hscan(SafeEncoder.encode(key), SafeEncoder.encode(cursor), params);
+			List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(page.getResult().size());
+			for (Map.Entry<byte[], byte[]> entry : page.getResult()) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<String, String>(
+						SafeEncoder.encode(entry.getKey()), compressor.decode(entry.getValue())));
+			}
+			return new ScanResult<Map.Entry<String, String>>(page.getCursorAsBytes(), entries);
+		})));
+	}
+
+	/**
+	 * 以SSCAN分页遍历指定key的set，遍历到页尾时才读取下一页，用于代替大set的smembers
+	 * @param key
+	 * @param pageSize 每页的COUNT提示值
+	 * @return 缓存未启用时返回空迭代器；读取某一页失败时，迭代器抛出IllegalStateException。
+	 *         创建迭代器时本JVM最近写入过key，则整个遍历都从master读取（游标不能在节点间混用）
+	 */
+	public RedisScanIterator<String> sscan(final String key, int pageSize) {
+		final ScanParams params = new ScanParams().count(pageSize);
+		final boolean fromMaster = recentlyWritten(key);
+		return new RedisScanIterator<String>(isEnable ? 1 : 0, (node, cursor) -> scanPage("sscan", key, fromMaster, () -> read(key, fromMaster, jedis -> jedis.sscan(key, cursor, params))));
+	}
+
+	/**
+	 * 以SCAN分页遍历所有节点中匹配pattern的key，依次遍历每个节点
+	 * @param pattern 为空时遍历全部key
+	 * @param pageSize 每页的COUNT提示值
+	 * @return 缓存未启用时返回空迭代器；读取某一页或获取节点失败时，迭代器抛出IllegalStateException
+	 */
+	public RedisScanIterator<String> scan(final String pattern, int pageSize) {
+		final ScanParams params = scanParams(pattern, pageSize);
+		return new RedisScanIterator<String>(isEnable ? nodeCount() : 0, (node, cursor) -> scanPage("scan", pattern, false, () -> {
+			readCircuitBreaker.acquire();
+			return backend().readNode(node, jedis -> jedis.scan(cursor, params));
+		}));
+	}
+
+	/**
+	 * 并行SCAN：每个节点一个线程同时遍历，每读到一页调用一次consumer（consumer会被多个线程并发调用）。
+	 * 遍历期间每个节点占用一个连接
+	 * @param pattern 为空时遍历全部key
+	 * @param pageSize 每页的COUNT提示值
+	 * @param consumer
+	 * @return 遍历到的key数量，异常时返回null
+	 */
+	public Long parallelScan(final String pattern, int pageSize, final Consumer<List<String>> consumer) {
+		if (isEnable) {
+			final ScanParams params = scanParams(pattern, pageSize);
+			long stime = System.nanoTime();
+			try {
+				readCircuitBreaker.acquire();
+				final RedisBackend backend = backend();
+				int nodes = backend.nodeCount();
+				List<Future<Long>> futures = new ArrayList<Future<Long>>(nodes);
+				for (int i = 0; i < nodes; i++) {
+					final int node = i;
+					futures.add(shardReadExecutor.submit(() -> backend.readNode(node, jedis -> {
+						long count = 0;
+						String cursor = ScanParams.SCAN_POINTER_START;
+						do {
+							ScanResult<String> page = jedis.scan(cursor, params);
+							if (!page.getResult().isEmpty()) {
+								count += page.getResult().size();
+								consumer.accept(page.getResult());
+							}
+							cursor = page.getStringCursor();
+						} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+						return count;
+					})));
+				}
+				long total = 0;
+				Exception error = null;
+				for (Future<Long> future : futures) {
+					try {
+						total += future.get();
+					} catch (Exception e) {
+						error = e;
+					}
+				}
+				if (error != null) {
+					throw error;
+				}
+				return total;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("parallelScan error pattern={}", pattern, e);
+				metrics.recordError("parallelScan", e);
+				readCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("parallelScan", System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 读取一页SCAN结果，每页单独获取、归还连接
+	 * @return 异常时返回null
+	 */
+	private <T> ScanResult<T> scanPage(String command, String key, boolean fromMaster, Supplier<ScanResult<T>> page) {
+		CircuitBreaker circuitBreaker = fromMaster ? writeCircuitBreaker : readCircuitBreaker;
+		long stime = System.nanoTime();
+		try {
+			return page.get();
+		} catch (CircuitBreakerOpenException e) {
+			// 熔断中快速失败，不记录异常
+		} catch (Exception e) {
+			logger.error("{} error key={}", command, key, e);
+			metrics.recordError(command, e);
+			circuitBreaker.onError(e);
+		} finally {
+			metrics.recordLatency(command, System.nanoTime() - stime);
+			circuitBreaker.onComplete(System.nanoTime() - stime);
+		}
+		return null;
+	}
+
+	/**
+	 * SCAN需要遍历的节点数量，异常时返回-1
+	 */
+	private int nodeCount() {
+		long stime = System.nanoTime();
+		try {
+			readCircuitBreaker.acquire();
+			return backend().nodeCount();
+		} catch (CircuitBreakerOpenException e) {
+			// 熔断中快速失败，不记录异常
+		} catch (Exception e) {
+			logger.error("get node count error", e);
+			readCircuitBreaker.onError(e);
+		} finally {
+			readCircuitBreaker.onComplete(System.nanoTime() - stime);
+		}
+		return -1;
+	}
+
+	private static ScanParams scanParams(String pattern, int pageSize) {
+		ScanParams params = new ScanParams().count(pageSize);
+		if (pattern != null && !pattern.isEmpty()) {
+			params.match(pattern);
+		}
+		return params;
+	}
+
+	/**
+	 * 单个分片的pipeline读取命令
+	 */
+	private interface ShardReader<T> {
+		Response<T> read(Pipeline pipeline, String key);
+	}
+
+	/**
+	 * 多key读取：按节点分组，每组一次pipeline，多节点时并行执行；本JVM最近写入过的key从master读取
+	 */
+	private <T> Map<String, T> multiRead(String command, Collection<String> keys, final ShardReader<T> reader) {
+		if (isEnable) {
+			Map<String, T> result = new LinkedHashMap<String, T>();
+			if (keys == null || keys.isEmpty()) {
+				return result;
+			}
+			long stime = System.nanoTime();
+			try {
+				logger.debug("{} keys size={}", command, keys.size());
+				final List<String> replicaKeys = new ArrayList<String>();
+				final List<String> masterKeys = new ArrayList<String>();
+				for (String key : new LinkedHashSet<String>(keys)) {
+					recordRead(key);
+					(recentlyWritten(key) ? masterKeys : replicaKeys).add(key);
+				}
+				Map<String, T> values = new HashMap<String, T>((replicaKeys.size() + masterKeys.size()) * 2);
+				// 先读master：master失败时读熔断器尚未获取许可，不会计入读节点的失败
+				if (!masterKeys.isEmpty()) {
+					putAll(values, masterKeys, multiReadFromMaster(masterKeys, reader));
+				}
+				if (!replicaKeys.isEmpty()) {
+					putAll(values, replicaKeys, pipelineRead(replicaKeys, (pipeline, i) -> reader.read(pipeline, replicaKeys.get(i))::get));
+				}
+				for (String key : keys) {
+					result.put(key, values.get(key));
+				}
+				return result;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("{} error keys={}", command, keys, e);
+				metrics.recordError(command, e);
+				readCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency(command, System.nanoTime() - stime);
+				readCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * multiRead中本JVM最近写入过的key从master读取，使用写熔断器
+	 */
+	private <T> List<Supplier<T>> multiReadFromMaster(final List<String> keys, final ShardReader<T> reader) {
+		long stime = System.nanoTime();
+		try {
+			return pipelineReadFromMaster(keys, (pipeline, i) -> reader.read(pipeline, keys.get(i))::get);
+		} catch (RuntimeException e) {
+			writeCircuitBreaker.onError(e);
+			throw e;
+		} finally {
+			writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+		}
+	}
+
+	private static <T> void putAll(Map<String, T> values, List<String> keys, List<Supplier<T>> responses) {
+		for (int i = 0; i < keys.size(); i++) {
+			values.put(keys.get(i), responses.get(i).get());
+		}
+	}
+
+	/**
+	 * 本JVM最近写入过该key时返回true，此时读取走master
+	 * @param key
+	 * @return
+	 */
+	boolean recentlyWritten(String key) {
+		return recentWrites != null && recentWrites.contains(key);
+	}
+
+	/**
+	 * 从master读取单个key
+	 * @param command 指标及日志中的命令名
+	 * @param key
+	 * @param reader
+	 * @return 异常时返回null
+	 */
+	private <T> T readFromMaster(String command, String key, JedisCallback<T> reader) {
+		long stime = System.nanoTime();
+		try {
+			return master(key, reader);
+		} catch (CircuitBreakerOpenException e) {
+			// 熔断中快速失败，不记录异常
+		} catch (Exception e) {
+			logger.error("{} from master error key={}", command, key, e);
+			metrics.recordError(command, e);
+			writeCircuitBreaker.onError(e);
+		} finally {
+			metrics.recordLatency(command, System.nanoTime() - stime);
+			writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+		}
+		return null;
+	}
+
+	private List<String> decodeValues(List<byte[]> values) {
+		List<String> result = new ArrayList<String>(values.size());
+		for (byte[] value : values) {
+			result.add(compressor.decode(value));
+		}
+		return result;
+	}
+
+	/**
+	 * 在key所在的master上执行同包组件（如RedisWorkQueue）的只读命令，记录耗时、异常并参与熔断；
+	 * 用于读取刚写入、不能容忍从节点同步延迟的数据，不双写
+	 * @param command 指标中的命令名称
+	 * @return 缓存未启用或异常时返回null
+	 */
+	<T> T executeReadFromMaster(String command, String key, JedisCallback<T> callback) {
+		return isEnable ? readFromMaster(command, key, callback) : null;
+	}
+
+	/**
+	 * 在key所在的master上执行同包组件（如RedisWorkQueue）的自定义命令，记录耗时、异常并参与熔断；
+	 * 不失效一级缓存，开启双写时成功后复制key及sameNodeKeys
+	 * @param command 指标中的命令名称
+	 * @param sameNodeKeys 命令同时写入的其他key（须与key在同一节点）
+	 * @return 缓存未启用或异常时返回null
+	 */
+	<T> T executeWrite(String command, String key, JedisCallback<T> callback, String... sameNodeKeys) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				T result = write(key, callback);
+				for (String sameNodeKey : sameNodeKeys) {
+					mirrorLater(sameNodeKey);
+				}
+				return result;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("{} error key={}", command, key, e);
+				metrics.recordError(command, e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency(command, System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 在key所在的读节点上执行，并记录连接等待时间；熔断中直接抛出CircuitBreakerOpenException
+	 */
+	private <T> T read(String key, final JedisCallback<T> callback) {
+		readCircuitBreaker.acquire();
+		// 未配置指标时不记录连接等待时间，避免每次调用额外分配包装回调
+		if (metrics == RedisMetrics.NOOP) {
+			return backend().read(key, callback);
+		}
+		final long stime = System.nanoTime();
+		return backend().read(key, jedis -> {
+			metrics.recordBorrow(READ_POOL, System.nanoTime() - stime);
+			return callback.execute(jedis);
+		});
+	}
+
+	/**
+	 * 同read，回调不捕获key，未配置指标时整个调用不分配回调对象
+	 */
+	private <T> T readKey(String key, final KeyCallback<T> callback) {
+		readCircuitBreaker.acquire();
+		if (metrics == RedisMetrics.NOOP) {
+			return backend().readKey(key, callback);
+		}
+		final long stime = System.nanoTime();
+		return backend().read(key, jedis -> {
+			metrics.recordBorrow(READ_POOL, System.nanoTime() - stime);
+			return callback.execute(jedis, key);
+		});
+	}
+
+	/**
+	 * fromMaster为true时在master上读取（read-your-writes），否则在读节点上读取
+	 */
+	private <T> T read(String key, boolean fromMaster, JedisCallback<T> callback) {
+		return fromMaster ? master(key, callback) : read(key, callback);
+	}
+
+	/**
+	 * 在key所在的master上写入，成功后开启双写时异步复制key；熔断中直接抛出CircuitBreakerOpenException
+	 */
+	private <T> T write(String key, JedisCallback<T> callback) {
+		T result = master(key, callback);
+		mirrorLater(key);
+		return result;
+	}
+
+	/**
+	 * 在key所在的master上执行，并记录连接等待时间；熔断中直接抛出CircuitBreakerOpenException
+	 */
+	private <T> T master(String key, final JedisCallback<T> callback) {
+		writeCircuitBreaker.acquire();
+		if (metrics == RedisMetrics.NOOP) {
+			return backend().write(key, callback);
+		}
+		final long stime = System.nanoTime();
+		return backend().write(key, jedis -> {
+			metrics.recordBorrow(WRITE_POOL, System.nanoTime() - stime);
+			return callback.execute(jedis);
+		});
+	}
+
+	/**
+	 * 多key读取：按读节点分组，每个节点一次pipeline；熔断中直接抛出CircuitBreakerOpenException
+	 * @param keys 每条命令对应的key
+	 * @param callback 向pipeline写入第i条命令
+	 * @return 每条命令sync后获取结果的Supplier，顺序与keys一致
+	 */
+	<T> List<Supplier<T>> pipelineRead(List<String> keys, PipelineCallback<T> callback) {
+		readCircuitBreaker.acquire();
+		return backend().pipelineRead(keys, callback);
+	}
+
+	/**
+	 * 多key从master读取（read-your-writes）：按master分组，每个master一次pipeline，不触发双写复制；
+	 * 熔断中直接抛出CircuitBreakerOpenException
+	 * @param keys 每条命令对应的key
+	 * @param callback 向pipeline写入第i条命令
+	 * @return 每条命令sync后获取结果的Supplier，顺序与keys一致
+	 */
+	<T> List<Supplier<T>> pipelineReadFromMaster(List<String> keys, PipelineCallback<T> callback) {
+		writeCircuitBreaker.acquire();
+		return backend().pipelineWrite(keys, callback);
+	}
+
+	/**
+	 * 多key写入：按master分组，每个master一次pipeline，成功后开启双写时异步复制每个key；
+	 * 熔断中直接抛出CircuitBreakerOpenException
+	 * @param keys 每条命令对应的key
+	 * @param callback 向pipeline写入第i条命令
+	 * @return 每条命令sync后获取结果的Supplier，顺序与keys一致
+	 */
+	<T> List<Supplier<T>> pipelineWrite(List<String> keys, PipelineCallback<T> callback) {
+		writeCircuitBreaker.acquire();
+		List<Supplier<T>> responses = backend().pipelineWrite(keys, callback);
+		if (dualWrite) {
+			for (String key : new LinkedHashSet<String>(keys)) {
+				mirrorLater(key);
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * 未配置backend时，使用readShardedJedisPool、writeJedisPool（writeMode为SHARDED时为shardedWritePool）创建客户端分片实现
+	 */
+	private RedisBackend backend() {
+		RedisBackend current = backend;
+		if (current == null) {
+			synchronized (this) {
+				if (backend == null) {
+					validate();
+					backend = new ShardedRedisBackend(readShardedJedisPool, writeJedisPool,
+							writeMode == WriteMode.SHARDED ? shardedWritePool : null, shardReadExecutor);
+				}
+				current = backend;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * 双写复制的目标拓扑：writeMode为SHARDED时复制到writeJedisPool，否则复制到shardedWritePool
+	 */
+	private RedisBackend mirrorBackend() {
+		RedisBackend current = mirrorBackend;
+		if (current == null) {
+			synchronized (this) {
+				if (mirrorBackend == null) {
+					mirrorBackend = new ShardedRedisBackend(readShardedJedisPool, writeJedisPool,
+							writeMode == WriteMode.SHARDED ? null : shardedWritePool, null);
+				}
+				current = mirrorBackend;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * 检查连接拓扑配置：未配置backend时须配置readShardedJedisPool及写入连接池，配置错误时启动失败，而不是在每次读写时出错
+	 */
+	@PostConstruct
+	public void init() {
+		validate();
+	}
+
+	private void validate() {
+		if (backend != null) {
+			if (dualWrite) {
+				throw new IllegalStateException("dualWrite is not supported with a custom backend");
+			}
+			return;
+		}
+		if (readShardedJedisPool == null) {
+			throw new IllegalStateException("readShardedJedisPool is required when no backend is configured");
+		}
+		if (writeMode == WriteMode.MASTER && writeJedisPool == null) {
+			throw new IllegalStateException("writeMode MASTER requires writeJedisPool");
+		}
+		if (writeMode == WriteMode.SHARDED && shardedWritePool == null) {
+			throw new IllegalStateException("writeMode SHARDED requires shardedWritePool");
+		}
+		if (dualWrite && (writeJedisPool == null || shardedWritePool == null)) {
+			throw new IllegalStateException("dualWrite requires both writeJedisPool and shardedWritePool");
+		}
+	}
+
+	/**
+	 * 开启双写时把key提交到复制线程池；队列已满时丢弃并记录异常
+	 */
+	private void mirrorLater(final String key) {
+		if (!dualWrite) {
+			return;
+		}
+		try {
+			mirrorExecutor().execute(() -> mirror(key));
+		} catch (RejectedExecutionException e) {
+			logger.warn("mirror write rejected key={}", key);
+			metrics.recordError(MIRROR_POOL, e);
+		}
+	}
+
+	private ExecutorService mirrorExecutor() {
+		ExecutorService current = mirrorExecutor;
+		if (current == null) {
+			synchronized (this) {
+				if (mirrorExecutor == null) {
+					mirrorExecutor = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(10000),
+							new ThreadFactoryBuilder().setDaemon(true).setNameFormat("redis-mirror-write-%d").build());
+				}
+				current = mirrorExecutor;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * 双写迁移：把key在当前写入拓扑上的最新值（DUMP + PTTL）复制到另一套拓扑，key不存在时在另一套拓扑删除。
+	 * 以源节点的redis服务器时间作为版本，目标节点保存已复制的版本，乱序或并发的复制不会用旧值覆盖新值。
+	 * 写入后的异步复制在失败、熔断或队列满时会丢失，切换写入拓扑前应遍历key调用本方法补齐：
+	 * <pre>
+	 * redisCache.scan("order:*", 1000).forEachRemaining(redisCache::mirror);
+	 * </pre>
+	 * @param key
+	 * @return 已复制返回true，目标节点已有更新的版本返回false，未开启双写或异常时返回null
+	 */
+	public Boolean mirror(final String key) {
+		if (isEnable && dualWrite) {
+			long stime = System.nanoTime();
+			try {
+				mirrorCircuitBreaker.acquire();
+				final List<byte[]> snapshot = backend().write(key, jedis -> RedisScripts.mirrorDump(jedis, key));
+				Long restored = mirrorBackend().write(key,
+						jedis -> RedisScripts.mirrorRestore(jedis, key, key + MIRROR_VERSION_SUFFIX, snapshot, MIRROR_VERSION_SECONDS));
+				return restored != null && restored == 1;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("mirror write error key={}", key, e);
+				metrics.recordError(MIRROR_POOL, e);
+				mirrorCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency(MIRROR_POOL, System.nanoTime() - stime);
+				mirrorCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 读取使用的本地缓存：配置了一级缓存时使用一级缓存，否则使用热点key检测提升的本地缓存；
+	 * 同时记录读取次数用于热点key检测
+	 * @param key
+	 * @return 不使用本地缓存时返回null
+	 */
+	private NearCache localCache(String key) {
+		if (hotKeyDetector == null) {
+			return nearCache;
+		}
+		hotKeyDetector.recordRead(key);
+		return nearCache != null ? nearCache : hotKeyDetector.promoted(key);
+	}
+
+	private void recordRead(String key) {
+		if (hotKeyDetector != null) {
+			hotKeyDetector.recordRead(key);
+		}
+	}
+
+	/**
+	 * 过期时间加上随机抖动，避免批量写入的key同时过期
+	 * @param seconds
+	 * @return
+	 */
+	int jitter(int seconds) {
+		if (ttlJitterPercent <= 0 || seconds <= 0) {
+			return seconds;
+		}
+		int bound = (int) (seconds * (long) ttlJitterPercent / 100);
+		return bound <= 0 ? seconds : seconds + ThreadLocalRandom.current().nextInt(bound + 1);
+	}
+
+	/**
+	 * 写入后失效本地一级缓存，并通知其他节点失效；开启read-your-writes时记录写入的key
+	 * @param key
+	 */
+	void afterWrite(String key) {
+		if (recentWrites != null) {
+			recentWrites.record(key);
+		}
+		if (nearCache != null) {
+			nearCache.invalidate(key);
+		}
+		if (hotKeyDetector != null) {
+			hotKeyDetector.recordWrite(key);
+		}
+		if (invalidationBus != null) {
+			invalidationBus.publish(key);
+		}
+	}
+
+	/**
+	 * 其他节点写入后失效本地缓存：一级缓存及热点key提升的本地缓存，与afterWrite的本地失效相同
+	 */
+	private final NearCacheInvalidationBus.Listener remoteInvalidation = new NearCacheInvalidationBus.Listener() {
+		@Override
+		public void invalidate(String key) {
+			if (nearCache != null) {
+				nearCache.invalidate(key);
+			}
+			if (hotKeyDetector != null) {
+				hotKeyDetector.invalidate(key);
+			}
+		}
+
+		@Override
+		public void invalidateAll() {
+			if (nearCache != null) {
+				nearCache.invalidateAll();
+			}
+			if (hotKeyDetector != null) {
+				hotKeyDetector.invalidateAll();
+			}
+		}
+	};
+
+	@PreDestroy
+	public void destroy() {
+		shardReadExecutor.shutdown();
+		if (mirrorExecutor != null) {
+			mirrorExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * 创建批量写入构建器，命令按写入分片分组，每个分片一次pipeline
+	 * @return
+	 */
+	public RedisBatch batch() {
+		return new RedisBatch(this);
+	}
+
+	/**
+	 * 执行批量写入，返回每条逻辑命令对应的结果（顺序与加入顺序一致）
+	 * @param batch
+	 * @return 缓存未启用或执行异常时返回null
+	 */
+	List<Object> executeBatch(final RedisBatch batch) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				logger.info("execute pipelined batch. size={}", batch.size());
+				final List<RedisBatch.Command> commands = batch.getCommands();
+				List<Supplier<Object>> responses = pipelineWrite(batch.getKeys(), (pipeline, i) -> {
+					Supplier<?> response = commands.get(i).apply(pipeline);
+					return response::get;
+				});
+				List<Object> results = new ArrayList<Object>(responses.size());
+				for (Supplier<?> response : responses) {
+					results.add(response.get());
+				}
+				return results;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("batch error size={}", batch.size(), e);
+				metrics.recordError("batch", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("batch", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				for (String key : batch.getKeys()) {
+					afterWrite(key);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 重置缓存过期时间（自定义时间）
+	 * @param key
+	 * @return
+	 */
+	public Long expire(String key, int seconds) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				logger.info("set a timeout on the specified key. key={}", key);
+				return write(key, jedis -> jedis.expire(key, seconds));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("expire error key={}", key, e);
+				metrics.recordError("expire", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("expire", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+				afterWrite(key);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * 值等于expected时删除key（lua脚本原子执行），用于只释放自己持有的锁
+	 * @param key
+	 * @param expected 加锁时写入的值
+	 * @return 删除数量，值不等或key不存在时返回0，异常时返回null
+	 */
+	public Long delIfEquals(String key, String expected) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				Long deleted = write(key, jedis -> RedisScripts.compareAndDelete(jedis, key, expected));
+				if (deleted != null && deleted > 0) {
+					afterWrite(key);
+				}
+				return deleted;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("delIfEquals error key={}", key, e);
+				metrics.recordError("delIfEquals", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("delIfEquals", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 值等于expected时重置过期时间（lua脚本原子执行），用于只续期自己持有的锁；值不变，不失效本地缓存
+	 * @param key
+	 * @param expected 加锁时写入的值
+	 * @param seconds
+	 * @return 1成功，值不等或key不存在时返回0，异常时返回null
+	 */
+	public Long expireIfEquals(String key, String expected, int seconds) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				return write(key, jedis -> RedisScripts.compareAndExpire(jedis, key, expected, seconds));
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("expireIfEquals error key={}", key, e);
+				metrics.recordError("expireIfEquals", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("expireIfEquals", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 计数器加1，key不存在时从0开始，不设置过期时间
+	 * @param key
+	 * @return 加1后的值，异常时返回null
+	 */
+	public Long incr(String key) {
+		if (isEnable) {
+			long stime = System.nanoTime();
+			try {
+				Long value = write(key, jedis -> jedis.incr(key));
+				afterWrite(key);
+				return value;
+			} catch (CircuitBreakerOpenException e) {
+				// 熔断中快速失败，不记录异常
+			} catch (Exception e) {
+				logger.error("incr error key={}", key, e);
+				metrics.recordError("incr", e);
+				writeCircuitBreaker.onError(e);
+			} finally {
+				metrics.recordLatency("incr", System.nanoTime() - stime);
+				writeCircuitBreaker.onComplete(System.nanoTime() - stime);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 获取租约（锁、选主、加载租约等协调用key）：key不存在时写入owner并设置过期时间（SET NX EX）。
+	 * 与setnx不同，租约key不经过本地缓存读取，写入后不失效本地缓存、不发布失效通知、不记录read-your-writes
+	 * @param key
+	 * @param owner 持有者标识，续期和释放时比较
+	 * @param seconds
+	 * @return 获取成功返回1，已被持有返回0，异常、熔断中或未启用时返回null
+	 */
+	public Long acquireLease(String key, String owner, int seconds) {
+		return executeWrite("acquireLease", key, jedis -> setnxEx(jedis, key, owner, seconds));
+	}
+
+	/**
+	 * 续期自己持有的租约（值等于owner时重置过期时间），没有本地缓存副作用
+	 * @param key
+	 * @param owner
+	 * @param seconds
+	 * @return 1成功，租约已过期或被他人持有时返回0，异常、熔断中或未启用时返回null
+	 */
+	public Long renewLease(String key, String owner, int seconds) {
+		return executeWrite("renewLease", key, jedis -> RedisScripts.compareAndExpire(jedis, key, owner, seconds));
+	}
+
+	/**
+	 * 释放自己持有的租约（值等于owner时删除），没有本地缓存副作用
+	 * @param key
+	 * @param owner
+	 * @return 1已释放，租约已过期或被他人持有时返回0，异常、熔断中或未启用时返回null
+	 */
+	public Long releaseLease(String key, String owner) {
+		return executeWrite("releaseLease", key, jedis -> RedisScripts.compareAndDelete(jedis, key, owner));
+	}
+
+	/**
+	 * 写入租约（心跳等）：无条件写入并设置过期时间，过期时间不加随机抖动，没有本地缓存副作用
+	 * @param key
+	 * @param value
+	 * @param seconds
+	 * @return 写入成功返回true，异常、熔断中或未启用时返回null
+	 */
+	public Boolean setLease(String key, String value, int seconds) {
+		return executeWrite("setLease", key, jedis -> "OK".equals(jedis.setex(key, seconds, value)));
+	}
+
+	/**
+	 * 写入hash字段并把整个hash的过期时间设为seconds（lua脚本原子执行），过期时间不加随机抖动，没有本地缓存副作用
+	 * @param key
+	 * @param field
+	 * @param value
+	 * @param seconds
+	 * @return HSET的返回值，异常、熔断中或未启用时返回null
+	 */
+	public Long hsetLease(String key, String field, String value, int seconds) {
+		return executeWrite("hsetLease", key, jedis -> RedisScripts.hsetExpire(jedis, key, field, value, seconds));
+	}
+
+	/**
+	 * 递增并返回fencing token（key不存在时从1开始，不设置过期时间），没有本地缓存副作用
+	 * @param key
+	 * @return 递增后的值，异常、熔断中或未启用时返回null
+	 */
+	public Long nextFencingToken(String key) {
+		return executeWrite("nextFencingToken", key, jedis -> jedis.incr(key));
+	}
+
+	/**
+	 * 重置缓存过期时间（默认时间）
+	 * @param key
+	 * @return
+	 */
+	public Long expire(String key) {
+		return expire(key, seconds);
+	}
+	
+	public void setReadShardedJedisPool(ShardedJedisPool readShardedJedisPool) {
+		this.readShardedJedisPool = readShardedJedisPool;
+	}
+
+	public void setWriteJedisPool(JedisPool writeJedisPool) {
+		this.writeJedisPool = writeJedisPool;
+	}
+
+	public int getSeconds() {
+		return seconds;
+	}
+
+	public void setSeconds(int seconds) {
+		this.seconds = seconds;
+	}
+
+	public NearCache getNearCache() {
+		return nearCache;
+	}
+
+	public void setNearCache(NearCache nearCache) {
+		this.nearCache = nearCache;
+	}
+
+	public NearCacheInvalidationBus getInvalidationBus() {
+		return invalidationBus;
+	}
+
+	public void setInvalidationBus(NearCacheInvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+		if (invalidationBus != null) {
+			invalidationBus.setListener(remoteInvalidation);
+		}
+	}
+
+	public int getLoadLeaseSeconds() {
+		return loadLeaseSeconds;
+	}
+
+	public void setLoadLeaseSeconds(int loadLeaseSeconds) {
+		this.loadLeaseSeconds = loadLeaseSeconds;
+	}
+
+	public int getStaleSeconds() {
+		return staleSeconds;
+	}
+
+	public void setStaleSeconds(int staleSeconds) {
+		this.staleSeconds = staleSeconds;
+	}
+
+	public int getTtlJitterPercent() {
+		return ttlJitterPercent;
+	}
+
+	public void setTtlJitterPercent(int ttlJitterPercent) {
+		this.ttlJitterPercent = ttlJitterPercent;
+	}
+
+	public double getEarlyRefreshBeta() {
+		return earlyRefreshBeta;
+	}
+
+	public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+		this.earlyRefreshBeta = earlyRefreshBeta;
+	}
+
+	public ValueCompressor getCompressor() {
+		return compressor;
+	}
+
+	public void setCompressor(ValueCompressor compressor) {
+		this.compressor = compressor;
+	}
+
+	public HotKeyDetector getHotKeyDetector() {
+		return hotKeyDetector;
+	}
+
+	public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+		this.hotKeyDetector = hotKeyDetector;
+	}
+
+	public RedisMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(RedisMetrics metrics) {
+		this.metrics = metrics == null ? RedisMetrics.NOOP : metrics;
+	}
+
+	public Serializer getSerializer() {
+		return serializer;
+	}
+
+	public void setSerializer(Serializer serializer) {
+		this.serializer = serializer;
 	}
 
 	public boolean isEnable() {
@@ -641,4 +2305,75 @@ public class RedisCache {
 	public void setIsEnable(boolean isEnable) {
 		this.isEnable = isEnable;
 	}
+
+	public CircuitBreaker getReadCircuitBreaker() {
+		return readCircuitBreaker;
+	}
+
+	public void setReadCircuitBreaker(CircuitBreaker readCircuitBreaker) {
+		this.readCircuitBreaker = readCircuitBreaker == null ? CircuitBreaker.disabled(READ_POOL) : readCircuitBreaker;
+	}
+
+	public CircuitBreaker getWriteCircuitBreaker() {
+		return writeCircuitBreaker;
+	}
+
+	public void setWriteCircuitBreaker(CircuitBreaker writeCircuitBreaker) {
+		this.writeCircuitBreaker = writeCircuitBreaker == null ? CircuitBreaker.disabled(WRITE_POOL) : writeCircuitBreaker;
+	}
+
+	public CircuitBreaker getMirrorCircuitBreaker() {
+		return mirrorCircuitBreaker;
+	}
+
+	public void setMirrorCircuitBreaker(CircuitBreaker mirrorCircuitBreaker) {
+		this.mirrorCircuitBreaker = mirrorCircuitBreaker == null ? CircuitBreaker.disabled(MIRROR_POOL) : mirrorCircuitBreaker;
+	}
+
+	public RecentWrites getRecentWrites() {
+		return recentWrites;
+	}
+
+	public void setRecentWrites(RecentWrites recentWrites) {
+		this.recentWrites = recentWrites;
+	}
+
+	public WriteMode getWriteMode() {
+		return writeMode;
+	}
+
+	public void setWriteMode(WriteMode writeMode) {
+		this.writeMode = writeMode;
+	}
+
+	public ShardedWritePool getShardedWritePool() {
+		return shardedWritePool;
+	}
+
+	public void setShardedWritePool(ShardedWritePool shardedWritePool) {
+		this.shardedWritePool = shardedWritePool;
+	}
+
+	public boolean isDualWrite() {
+		return dualWrite;
+	}
+
+	public void setDualWrite(boolean dualWrite) {
+		this.dualWrite = dualWrite;
+	}
+
+	public RedisBackend getBackend() {
+		return backend;
+	}
+
+	public void setBackend(RedisBackend backend) {
+		this.backend = backend;
+	}
+
+	/**
+	 * 写入拓扑
+	 */
+	public enum WriteMode {
+		MASTER, SHARDED
+	}
 }
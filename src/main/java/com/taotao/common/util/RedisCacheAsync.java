@@ -0,0 +1,206 @@
+package com.taotao.common.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：RedisCache异步接口
+ * <p/>
+ * 调用线程只把命令放入有界队列并立即返回CompletableFuture；IO线程每次取出队列中积压的命令，
+ * 读命令按读节点、写命令按写入节点各用一次pipeline执行，再逐个完成future。
+ * 与RedisCache同步接口保持一致：缓存未启用或执行异常时返回null/false，队列已满时同样快速返回。
+ * 读取时使用RedisCache的一级缓存和压缩配置，写入时失效一级缓存。
+ * <pre>
+ * &lt;bean id="redisCacheAsync" class="com.taotao.common.util.RedisCacheAsync"&gt;
+ *     &lt;constructor-arg ref="redisCache"/&gt;
+ *     &lt;constructor-arg value="4"/&gt;
+ *     &lt;constructor-arg value="128"/&gt;
+ *     &lt;constructor-arg value="10000"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class RedisCacheAsync {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisCacheAsync.class);
+
+    private final RedisCache redisCache;
+
+    private final int ioThreads;
+
+    /**
+     * 单次pipeline最多合并的命令数
+     */
+    private final int maxBatchSize;
+
+    private final PipelineCommandQueue queue;
+
+    private ExecutorService ioExecutor;
+
+    private volatile boolean running;
+
+    public RedisCacheAsync(RedisCache redisCache, int ioThreads, int maxBatchSize, int queueCapacity) {
+        this.redisCache = redisCache;
+        this.ioThreads = ioThreads;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new PipelineCommandQueue(redisCache, "redis async", "asyncRead", "asyncWrite", maxBatchSize, queueCapacity);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        queue.open();
+        ioExecutor = Executors.newFixedThreadPool(ioThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("redis-cache-async-%d").build());
+        for (int i = 0; i < ioThreads; i++) {
+            ioExecutor.execute(this::ioLoop);
+        }
+    }
+
+    /**
+     * 停止接收新命令，已入队的命令执行完成后退出
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.close();
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("redis async io threads not terminated, pending={}", queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // IO线程未能在超时内退出时，由当前线程执行剩余命令
+        queue.drain();
+    }
+
+    public CompletableFuture<String> get(final String key) {
+        NearCache nearCache = redisCache.getNearCache();
+        if (nearCache != null && redisCache.isEnable()) {
+            String value = nearCache.get(key);
+            if (value != null) {
+                return CompletableFuture.completedFuture(value);
+            }
+        }
+        final long generation = nearCache != null ? nearCache.generation(key) : 0L;
+        final ValueCompressor compressor = redisCache.getCompressor();
+        return submit(false, key, null, pipeline -> {
+            if (compressor == null) {
+                return pipeline.get(key)::get;
+            }
+            Response<byte[]> response = pipeline.get(SafeEncoder.encode(key));
+            return () -> compressor.decode(response.get());
+        }, value -> {
+            if (nearCache != null) {
+                nearCache.put(key, value, generation);
+            }
+        });
+    }
+
+    public CompletableFuture<String> hget(final String key, final String field) {
+        NearCache nearCache = redisCache.getNearCache();
+        if (nearCache != null && redisCache.isEnable()) {
+            String value = nearCache.hget(key, field);
+            if (value != null) {
+                return CompletableFuture.completedFuture(value);
+            }
+        }
+        final long generation = nearCache != null ? nearCache.generation(key) : 0L;
+        final ValueCompressor compressor = redisCache.getCompressor();
+        return submit(false, key, null, pipeline -> {
+            if (compressor == null) {
+                return pipeline.hget(key, field)::get;
+            }
+            Response<byte[]> response = pipeline.hget(SafeEncoder.encode(key), SafeEncoder.encode(field));
+            return () -> compressor.decode(response.get());
+        }, value -> {
+            if (nearCache != null) {
+                nearCache.hput(key, field, value, generation);
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> set(String key, String value) {
+        return set(key, value, redisCache.getSeconds());
+    }
+
+    public CompletableFuture<Boolean> set(final String key, final String value, final int seconds) {
+        final ValueCompressor compressor = redisCache.getCompressor();
+        final int ttl = redisCache.jitter(seconds);
+        return submit(true, key, false, pipeline -> {
+            Response<String> response = compressor == null ? pipeline.setex(key, ttl, value)
+                    : pipeline.setex(SafeEncoder.encode(key), ttl, compressor.encode(value));
+            return () -> "OK".equals(response.get());
+        }, null);
+    }
+
+    public CompletableFuture<Boolean> hset(final String key, final String field, final String value) {
+        final ValueCompressor compressor = redisCache.getCompressor();
+        final int ttl = redisCache.jitter(redisCache.getSeconds());
+        return submit(true, key, false, pipeline -> {
+            Supplier<Long> response = compressor == null ? RedisScripts.hsetExpire(pipeline, key, field, value, ttl)
+                    : RedisScripts.hsetExpire(pipeline, SafeEncoder.encode(key), SafeEncoder.encode(field), compressor.encode(value), ttl);
+            return () -> response.get() != null;
+        }, null);
+    }
+
+    public CompletableFuture<Long> del(final String key) {
+        return submit(true, key, null, pipeline -> pipeline.del(key)::get, null);
+    }
+
+    public CompletableFuture<Long> expire(final String key, final int seconds) {
+        return submit(true, key, null, pipeline -> pipeline.expire(key, seconds)::get, null);
+    }
+
+    /**
+     * 当前排队中的命令数量
+     *
+     * @return
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    private <T> CompletableFuture<T> submit(boolean write, String key, T fallback, PipelineCommandQueue.PipelineCall<T> call,
+                                            PipelineCommandQueue.Callback<T> callback) {
+        return queue.submit(write, key, fallback, call, callback, 0L);
+    }
+
+    private void ioLoop() {
+        List<PipelineCommandQueue.Command<?>> commands = new ArrayList<PipelineCommandQueue.Command<?>>(maxBatchSize);
+        while (!queue.isDrained()) {
+            try {
+                queue.poll(commands, 100, 0);
+                queue.execute(commands);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.execute(commands);
+                return;
+            } catch (Exception e) {
+                LOGGER.error("redis async io error, size={}", commands.size(), e);
+            } finally {
+                commands.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.taotao.common.util;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 功能描述：基于SCAN/HSCAN/SSCAN游标的惰性迭代器
+ * <p/>
+ * 当前页遍历完才读取下一页，每页单独获取、归还连接，调用方中途停止遍历不会占用连接；
+ * 多个分片时依次遍历每个分片。与SCAN命令语义一致：遍历期间被修改的元素可能重复或遗漏。
+ * 读取某一页出错（包括熔断中）或获取节点失败时，hasNext()/next()抛出IllegalStateException，
+ * 不会把不完整的结果当作遍历完成；之后再调用同样抛出。非线程安全。
+ */
+public final class RedisScanIterator<T> implements Iterator<T> {
+
+    /**
+     * 读取指定分片、游标的一页，出错时返回null（错误由RedisCache记录）
+     */
+    interface PageReader<T> {
+        ScanResult<T> read(int shard, String cursor);
+    }
+
+    private final int shards;
+
+    private final PageReader<T> reader;
+
+    private int shard;
+
+    private String cursor = ScanParams.SCAN_POINTER_START;
+
+    private Iterator<T> page = Collections.emptyIterator();
+
+    private boolean failed;
+
+    /**
+     * @param shards 需要遍历的分片数，小于0表示获取分片失败
+     * @param reader
+     */
+    RedisScanIterator(int shards, PageReader<T> reader) {
+        this.shards = shards;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext()) {
+            if (!nextPage()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    /**
+     * 以Stream方式惰性遍历
+     *
+     * @return
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false);
+    }
+
+    private boolean nextPage() {
+        if (failed || shards < 0) {
+            failed = true;
+            throw new IllegalStateException("redis scan failed, shards=" + shards + ", shard=" + shard + ", cursor=" + cursor);
+        }
+        if (shard >= shards) {
+            return false;
+        }
+        ScanResult<T> result = reader.read(shard, cursor);
+        if (result == null) {
+            failed = true;
+            throw new IllegalStateException("redis scan page read failed, shard=" + shard + ", cursor=" + cursor);
+        }
+        page = result.getResult().iterator();
+        cursor = result.getStringCursor();
+        if (ScanParams.SCAN_POINTER_START.equals(cursor)) {
+            shard++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,266 @@
+package com.taotao.common.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：RedisCache使用的lua脚本，保证集合类写入和过期时间设置、锁的比较后删除/续期在一条命令内原子完成
+ * <p/>
+ * 脚本统一以字符串返回整数结果（jedis的Pipeline.eval只支持字符串回复），由调用方转换为Long。
+ */
+final class RedisScripts {
+
+    /**
+     * 集合类写入并设置过期时间
+     * <p/>
+     * ARGV[1]：命令（LPUSH/RPUSH/SADD），ARGV[2]：过期秒数，ARGV[3..]：元素。
+     * 元素分段unpack避免超出lua栈限制；SADD返回新增成员总数，其余返回最后一次写入后的长度。
+     */
+    static final String PUSH_EXPIRE = "local n = 0 "
+            + "for i = 3, #ARGV, 5000 do "
+            + "local r = redis.call(ARGV[1], KEYS[1], unpack(ARGV, i, math.min(i + 4999, #ARGV))) "
+            + "if ARGV[1] == 'SADD' then n = n + r else n = r end "
+            + "end "
+            + "redis.call('EXPIRE', KEYS[1], ARGV[2]) "
+            + "return tostring(n)";
+
+    /**
+     * hash写入并设置过期时间，ARGV[1]：field，ARGV[2]：value，ARGV[3]：过期秒数
+     */
+    static final String HSET_EXPIRE = "local r = redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) "
+            + "redis.call('EXPIRE', KEYS[1], ARGV[3]) "
+            + "return tostring(r)";
+
+    /**
+     * 值等于ARGV[1]时删除，返回删除数量；用于只释放自己持有的锁
+     */
+    static final String COMPARE_DEL = "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+            + "return tostring(redis.call('DEL', KEYS[1])) "
+            + "end "
+            + "return '0'";
+
+    /**
+     * 值等于ARGV[1]时设置过期时间ARGV[2]秒，返回1，否则返回0；用于只续期自己持有的锁
+     */
+    static final String COMPARE_EXPIRE = "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+            + "return tostring(redis.call('EXPIRE', KEYS[1], ARGV[2])) "
+            + "end "
+            + "return '0'";
+
+    /**
+     * 工作队列领取：先把可见超时（score不大于ARGV[1]）的在途元素移回待处理列表尾部优先重新投递（最多ARGV[3]个），
+     * 再从待处理列表尾部弹出最多ARGV[4]个元素，以ARGV[2]为可见截止时间放入在途zset。
+     * KEYS[1]：待处理列表，KEYS[2]：在途zset；返回{重新投递数量, 元素...}
+     */
+    static final String QUEUE_DEQUEUE = "local requeued = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3]) "
+            + "for _, item in ipairs(requeued) do "
+            + "redis.call('ZREM', KEYS[2], item) "
+            + "redis.call('RPUSH', KEYS[1], item) "
+            + "end "
+            + "local result = {tostring(#requeued)} "
+            + "for i = 1, tonumber(ARGV[4]) do "
+            + "local item = redis.call('RPOP', KEYS[1]) "
+            + "if not item then break end "
+            + "redis.call('ZADD', KEYS[2], ARGV[2], item) "
+            + "result[#result + 1] = item "
+            + "end "
+            + "return result";
+
+    /**
+     * 双写复制源端：同一条命令内读取DUMP、PTTL和redis服务器时间（微秒）作为版本，返回{dump或空串, pttl, 版本}。
+     * 只包含读命令，TIME之后不能再写入
+     */
+    static final String MIRROR_DUMP = "local t = redis.call('TIME') "
+            + "return {redis.call('DUMP', KEYS[1]) or '', tostring(redis.call('PTTL', KEYS[1])), t[1] .. string.format('%06d', t[2])}";
+
+    /**
+     * 双写复制目标端：KEYS[1]：key，KEYS[2]：版本key；ARGV[1]：版本，ARGV[2]：RESTORE毫秒数，ARGV[3]：dump（空串表示删除），
+     * ARGV[4]：版本key过期秒数。已复制的版本比ARGV[1]新时不覆盖，返回0，否则覆盖并返回1
+     */
+    static final String MIRROR_RESTORE = "local current = redis.call('GET', KEYS[2]) "
+            + "if current and tonumber(current) > tonumber(ARGV[1]) then return '0' end "
+            + "redis.call('DEL', KEYS[1]) "
+            + "if ARGV[3] ~= '' then redis.call('RESTORE', KEYS[1], ARGV[2], ARGV[3]) end "
+            + "redis.call('SET', KEYS[2], ARGV[1], 'EX', ARGV[4]) "
+            + "return '1'";
+
+    private static final String NO_SCRIPT = "NOSCRIPT";
+
+    private RedisScripts() {
+    }
+
+    static String sha1(String script) {
+        return Hashing.sha1().hashString(script, Charsets.UTF_8).toString();
+    }
+
+    /**
+     * 优先使用EVALSHA，脚本未加载时退回EVAL（EVAL同时会缓存脚本）
+     */
+    static Object eval(Jedis jedis, String script, List<String> keys, List<String> args) {
+        try {
+            return jedis.evalsha(sha1(script), keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith(NO_SCRIPT)) {
+                throw e;
+            }
+            return jedis.eval(script, keys, args);
+        }
+    }
+
+    /**
+     * 二进制参数版本，用于压缩后的值
+     */
+    static Object eval(Jedis jedis, String script, byte[] key, List<byte[]> args) {
+        return evalBinary(jedis, script, Collections.singletonList(key), args);
+    }
+
+    static Object evalBinary(Jedis jedis, String script, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return jedis.evalsha(SafeEncoder.encode(sha1(script)), keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith(NO_SCRIPT)) {
+                throw e;
+            }
+            return jedis.eval(SafeEncoder.encode(script), keys, args);
+        }
+    }
+
+    static Long pushExpire(Jedis jedis, String command, String key, int seconds, String... values) {
+        return toLong(eval(jedis, PUSH_EXPIRE, Collections.singletonList(key), pushArgs(command, seconds, values)));
+    }
+
+    static Supplier<Long> pushExpire(Pipeline pipeline, String command, String key, int seconds, String... values) {
+        return toLong(pipeline.eval(PUSH_EXPIRE, Collections.singletonList(key), pushArgs(command, seconds, values)));
+    }
+
+    static Long hsetExpire(Jedis jedis, String key, String field, String value, int seconds) {
+        return toLong(eval(jedis, HSET_EXPIRE, Collections.singletonList(key), hsetArgs(field, value, seconds)));
+    }
+
+    static Long hsetExpire(Jedis jedis, byte[] key, byte[] field, byte[] value, int seconds) {
+        return toLong(eval(jedis, HSET_EXPIRE, key, hsetArgs(field, value, seconds)));
+    }
+
+    static Supplier<Long> hsetExpire(Pipeline pipeline, byte[] key, byte[] field, byte[] value, int seconds) {
+        final Response<Object> response = pipeline.eval(SafeEncoder.encode(HSET_EXPIRE),
+                Collections.singletonList(key), hsetArgs(field, value, seconds));
+        return () -> toLong(response.get());
+    }
+
+    static Supplier<Long> hsetExpire(Pipeline pipeline, String key, String field, String value, int seconds) {
+        return toLong(pipeline.eval(HSET_EXPIRE, Collections.singletonList(key), hsetArgs(field, value, seconds)));
+    }
+
+    static Long compareAndDelete(Jedis jedis, String key, String expected) {
+        return toLong(eval(jedis, COMPARE_DEL, Collections.singletonList(key), Collections.singletonList(expected)));
+    }
+
+    static Long compareAndExpire(Jedis jedis, String key, String expected, int seconds) {
+        List<String> args = new ArrayList<String>(2);
+        args.add(expected);
+        args.add(String.valueOf(seconds));
+        return toLong(eval(jedis, COMPARE_EXPIRE, Collections.singletonList(key), args));
+    }
+
+    /**
+     * @return Redis服务器当前时间（毫秒）
+     */
+    static long timeMillis(Jedis jedis) {
+        List<String> time = jedis.time();
+        return Long.parseLong(time.get(0)) * 1000L + Long.parseLong(time.get(1)) / 1000L;
+    }
+
+    /**
+     * @return 第一个元素为重新投递数量，其余为领取到的元素
+     */
+    static List<String> dequeue(Jedis jedis, String pendingKey, String inflightKey, long now, long deadline, int requeueLimit, int count) {
+        List<String> keys = new ArrayList<String>(2);
+        keys.add(pendingKey);
+        keys.add(inflightKey);
+        List<String> args = new ArrayList<String>(4);
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(deadline));
+        args.add(String.valueOf(requeueLimit));
+        args.add(String.valueOf(count));
+        List<?> result = (List<?>) eval(jedis, QUEUE_DEQUEUE, keys, args);
+        List<String> items = new ArrayList<String>(result.size());
+        for (Object item : result) {
+            items.add(item instanceof byte[] ? SafeEncoder.encode((byte[]) item) : String.valueOf(item));
+        }
+        return items;
+    }
+
+    /**
+     * @return {dump（key不存在时为空数组）, pttl, 版本}
+     */
+    static List<byte[]> mirrorDump(Jedis jedis, String key) {
+        List<?> result = (List<?>) eval(jedis, MIRROR_DUMP, SafeEncoder.encode(key), Collections.<byte[]>emptyList());
+        List<byte[]> snapshot = new ArrayList<byte[]>(result.size());
+        for (Object item : result) {
+            snapshot.add((byte[]) item);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param snapshot mirrorDump的结果
+     * @return 覆盖返回1，目标端已有更新的版本返回0
+     */
+    static Long mirrorRestore(Jedis jedis, String key, String versionKey, List<byte[]> snapshot, int versionSeconds) {
+        List<byte[]> keys = new ArrayList<byte[]>(2);
+        keys.add(SafeEncoder.encode(key));
+        keys.add(SafeEncoder.encode(versionKey));
+        long pttl = Long.parseLong(SafeEncoder.encode(snapshot.get(1)));
+        List<byte[]> args = new ArrayList<byte[]>(4);
+        args.add(snapshot.get(2));
+        args.add(SafeEncoder.encode(String.valueOf(Math.max(0L, pttl))));
+        args.add(snapshot.get(0));
+        args.add(SafeEncoder.encode(String.valueOf(versionSeconds)));
+        return toLong(evalBinary(jedis, MIRROR_RESTORE, keys, args));
+    }
+
+    private static Long toLong(Object result) {
+        if (result instanceof byte[]) {
+            result = SafeEncoder.encode((byte[]) result);
+        }
+        return result == null ? null : Long.valueOf(result.toString());
+    }
+
+    private static Supplier<Long> toLong(final Response<String> response) {
+        return () -> toLong(response.get());
+    }
+
+    private static List<String> pushArgs(String command, int seconds, String... values) {
+        List<String> args = new ArrayList<String>(values.length + 2);
+        args.add(command);
+        args.add(String.valueOf(seconds));
+        Collections.addAll(args, values);
+        return args;
+    }
+
+    private static List<byte[]> hsetArgs(byte[] field, byte[] value, int seconds) {
+        List<byte[]> args = new ArrayList<byte[]>(3);
+        args.add(field);
+        args.add(value);
+        args.add(SafeEncoder.encode(String.valueOf(seconds)));
+        return args;
+    }
+
+    private static List<String> hsetArgs(String field, String value, int seconds) {
+        List<String> args = new ArrayList<String>(3);
+        args.add(field);
+        args.add(value);
+        args.add(String.valueOf(seconds));
+        return args;
+    }
+}
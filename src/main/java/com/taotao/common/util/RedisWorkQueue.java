@@ -0,0 +1,253 @@
+package com.taotao.common.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 功能描述：基于RedisCache的可靠工作队列
+ * <p/>
+ * 待处理元素在列表 {name}:pending 中（LPUSH入队，RPOP出队，先进先出），领取时由lua脚本原子移入在途zset {name}:inflight，
+ * score为可见截止时间；处理完成后ack从在途zset删除。消费者宕机或处理失败未ack的元素，超过visibilitySeconds后
+ * 在下次领取时移回待处理列表重新投递，因此消费者须幂等。可见截止时间和重新投递的判断都以Redis服务器时钟（TIME）为准，
+ * 不受各消费者本机时钟偏差影响。两个key带相同hash tag，并且所有命令都按待处理列表key路由，
+ * 在客户端分片和Redis Cluster下都位于同一节点。
+ * <p/>
+ * 指标通过RedisCache的RedisMetrics记录：queue:{name}:wait 入队到领取的等待时间，queue:{name}:process 领取到ack的处理时间；
+ * depth()、inFlight()、backlog()从master读取当前积压，不受从节点同步延迟影响。
+ * <pre>
+ * &lt;bean id="feeVoucherQueue" class="com.taotao.common.util.RedisWorkQueue"&gt;
+ *     &lt;constructor-arg ref="redisCache"/&gt;
+ *     &lt;constructor-arg value="FETCH_ORDER_TO_BASE_FEE_VOUCHER"/&gt;
+ *     &lt;constructor-arg value="300"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class RedisWorkQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisWorkQueue.class);
+
+    /**
+     * 每次领取最多移回的可见超时元素数量
+     */
+    private static final int REQUEUE_LIMIT = 100;
+
+    private static final char SEPARATOR = ':';
+
+    private final RedisCache redisCache;
+
+    private final String name;
+
+    private final int visibilitySeconds;
+
+    private final String pendingKey;
+
+    private final String inflightKey;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong dequeued = new AtomicLong();
+
+    private final AtomicLong acked = new AtomicLong();
+
+    private final AtomicLong redelivered = new AtomicLong();
+
+    /**
+     * @param redisCache
+     * @param name              队列名称
+     * @param visibilitySeconds 领取后未ack的元素重新投递前的秒数，应大于单个元素的最长处理时间
+     */
+    public RedisWorkQueue(RedisCache redisCache, String name, int visibilitySeconds) {
+        this.redisCache = redisCache;
+        this.name = name;
+        this.visibilitySeconds = visibilitySeconds;
+        this.pendingKey = "{" + name + "}:pending";
+        this.inflightKey = "{" + name + "}:inflight";
+    }
+
+    /**
+     * 批量入队
+     *
+     * @param payloads
+     * @return 入队后待处理数量，异常时返回null
+     */
+    public Long enqueue(List<String> payloads) {
+        if (payloads == null || payloads.isEmpty()) {
+            return depth();
+        }
+        long now = System.currentTimeMillis();
+        final String[] items = new String[payloads.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = UUID.randomUUID().toString() + SEPARATOR + now + SEPARATOR + payloads.get(i);
+        }
+        Long depth = redisCache.executeWrite(command("enqueue"), pendingKey, jedis -> jedis.lpush(pendingKey, items));
+        if (depth != null) {
+            enqueued.addAndGet(items.length);
+        }
+        return depth;
+    }
+
+    /**
+     * 批量领取，同时把可见超时的在途元素重新投递
+     *
+     * @param max 最多领取数量
+     * @return 队列为空或异常时返回空列表
+     */
+    public List<WorkItem> dequeue(int max) {
+        final long visibilityMillis = TimeUnit.SECONDS.toMillis(visibilitySeconds);
+        // Redis 2.8的lua脚本调用TIME后不能再写入，因此在同一连接上先读服务器时钟再执行脚本
+        List<String> result = redisCache.executeWrite(command("dequeue"), pendingKey, jedis -> {
+            long serverNow = RedisScripts.timeMillis(jedis);
+            return RedisScripts.dequeue(jedis, pendingKey, inflightKey, serverNow, serverNow + visibilityMillis, REQUEUE_LIMIT, max);
+        }, inflightKey);
+        if (result == null || result.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long requeued = Long.parseLong(result.get(0));
+        if (requeued > 0) {
+            redelivered.addAndGet(requeued);
+            LOGGER.warn("redis work queue redelivered abandoned items, name={}, count={}", name, requeued);
+        }
+        // 入队时间取自生产者本机时钟，等待时间同样按本机时钟计算
+        long now = System.currentTimeMillis();
+        List<WorkItem> items = new ArrayList<WorkItem>(result.size() - 1);
+        for (int i = 1; i < result.size(); i++) {
+            WorkItem item = WorkItem.parse(result.get(i));
+            redisCache.getMetrics().recordLatency(command("wait"), TimeUnit.MILLISECONDS.toNanos(Math.max(0L, now - item.getEnqueuedAt())));
+            items.add(item);
+        }
+        dequeued.addAndGet(items.size());
+        return items;
+    }
+
+    /**
+     * 处理完成，从在途zset删除；可见超时后已被重新投递的元素同样会被删除，避免重复处理
+     *
+     * @param item
+     * @return 是否删除，已被其他消费者ack时返回false
+     */
+    public boolean ack(WorkItem item) {
+        Long removed = redisCache.executeWrite(command("ack"), pendingKey, jedis -> {
+            long count = jedis.zrem(inflightKey, item.raw);
+            return count > 0 ? count : jedis.lrem(pendingKey, 1, item.raw);
+        }, inflightKey);
+        redisCache.getMetrics().recordLatency(command("process"), System.nanoTime() - item.dequeuedNanos);
+        if (removed != null && removed > 0) {
+            acked.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 待处理数量
+     *
+     * @return 异常时返回null
+     */
+    public Long depth() {
+        return redisCache.executeReadFromMaster(command("depth"), pendingKey, jedis -> jedis.llen(pendingKey));
+    }
+
+    /**
+     * 在途（已领取未ack）数量
+     *
+     * @return 异常时返回null
+     */
+    public Long inFlight() {
+        return redisCache.executeReadFromMaster(command("inFlight"), pendingKey, jedis -> jedis.zcard(inflightKey));
+    }
+
+    /**
+     * 待处理与在途数量之和，为0表示上一批元素已全部处理完成；两个数量在同一事务中读取，
+     * 不会漏掉两次读取之间由在途移回待处理的元素
+     *
+     * @return 异常时返回null
+     */
+    public Long backlog() {
+        return redisCache.executeReadFromMaster(command("backlog"), pendingKey, jedis -> {
+            Transaction transaction = jedis.multi();
+            Response<Long> pending = transaction.llen(pendingKey);
+            Response<Long> inflight = transaction.zcard(inflightKey);
+            transaction.exec();
+            return pending.get() + inflight.get();
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    public long getDequeuedCount() {
+        return dequeued.get();
+    }
+
+    public long getAckedCount() {
+        return acked.get();
+    }
+
+    public long getRedeliveredCount() {
+        return redelivered.get();
+    }
+
+    private String command(String operation) {
+        return "queue:" + name + SEPARATOR + operation;
+    }
+
+    /**
+     * 领取到的元素，队列中存储为 id:入队毫秒时间:payload
+     */
+    public static final class WorkItem {
+
+        private final String raw;
+
+        private final String id;
+
+        private final long enqueuedAt;
+
+        private final String payload;
+
+        private final long dequeuedNanos = System.nanoTime();
+
+        private WorkItem(String raw, String id, long enqueuedAt, String payload) {
+            this.raw = raw;
+            this.id = id;
+            this.enqueuedAt = enqueuedAt;
+            this.payload = payload;
+        }
+
+        static WorkItem parse(String raw) {
+            int first = raw.indexOf(SEPARATOR);
+            int second = raw.indexOf(SEPARATOR, first + 1);
+            return new WorkItem(raw, raw.substring(0, first), Long.parseLong(raw.substring(first + 1, second)), raw.substring(second + 1));
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        @Override
+        public String toString() {
+            return "WorkItem{id=" + id + ", enqueuedAt=" + enqueuedAt + "}";
+        }
+    }
+}
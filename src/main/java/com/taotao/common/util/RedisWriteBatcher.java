@@ -0,0 +1,154 @@
+package com.taotao.common.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：RedisCache写入合并（write-behind）
+ * <p/>
+ * 写入命令先进入有界队列，后台线程在一个时间窗口内（或攒够maxBatchSize条）按写入分片合并为pipeline提交，
+ * 再完成每个调用方的future。队列已满时调用方最多阻塞offerTimeoutMillis（背压），超时返回false/null；
+ * stop时先把队列中剩余的命令全部提交。
+ * <pre>
+ * &lt;bean class="com.taotao.common.util.RedisWriteBatcher"&gt;
+ *     &lt;constructor-arg ref="redisCache"/&gt;
+ *     &lt;constructor-arg value="1"/&gt;
+ *     &lt;constructor-arg value="256"/&gt;
+ *     &lt;constructor-arg value="20000"/&gt;
+ *     &lt;constructor-arg value="50"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class RedisWriteBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisWriteBatcher.class);
+
+    private final RedisCache redisCache;
+
+    /**
+     * 合并窗口毫秒数
+     */
+    private final long windowMillis;
+
+    private final int maxBatchSize;
+
+    private final long offerTimeoutMillis;
+
+    private final PipelineCommandQueue queue;
+
+    private volatile boolean running;
+
+    private Thread flushThread;
+
+    public RedisWriteBatcher(RedisCache redisCache, long windowMillis, int maxBatchSize, int queueCapacity, long offerTimeoutMillis) {
+        this.redisCache = redisCache;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.queue = new PipelineCommandQueue(redisCache, "redis write batcher", "writeBatch", "writeBatch", maxBatchSize, queueCapacity);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        queue.open();
+        flushThread = new Thread(this::flushLoop, "redis-write-batcher");
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    /**
+     * 停止接收新写入，提交队列中剩余的命令
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.close();
+        try {
+            flushThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 线程未能在超时内退出时，由当前线程提交剩余命令
+        queue.drain();
+    }
+
+    public CompletableFuture<Boolean> set(String key, String value) {
+        return set(key, value, redisCache.getSeconds());
+    }
+
+    public CompletableFuture<Boolean> set(final String key, final String value, final int seconds) {
+        final ValueCompressor compressor = redisCache.getCompressor();
+        final int ttl = redisCache.jitter(seconds);
+        return submit(key, false, pipeline -> {
+            Response<String> response = compressor == null ? pipeline.setex(key, ttl, value)
+                    : pipeline.setex(SafeEncoder.encode(key), ttl, compressor.encode(value));
+            return () -> "OK".equals(response.get());
+        });
+    }
+
+    public CompletableFuture<Boolean> hset(final String key, final String field, final String value) {
+        final ValueCompressor compressor = redisCache.getCompressor();
+        final int ttl = redisCache.jitter(redisCache.getSeconds());
+        return submit(key, false, pipeline -> {
+            Supplier<Long> response = compressor == null ? RedisScripts.hsetExpire(pipeline, key, field, value, ttl)
+                    : RedisScripts.hsetExpire(pipeline, SafeEncoder.encode(key), SafeEncoder.encode(field), compressor.encode(value), ttl);
+            return () -> response.get() != null;
+        });
+    }
+
+    public CompletableFuture<Long> expire(final String key, final int seconds) {
+        return submit(key, null, pipeline -> pipeline.expire(key, seconds)::get);
+    }
+
+    public CompletableFuture<Long> del(final String key) {
+        return submit(key, null, pipeline -> pipeline.del(key)::get);
+    }
+
+    /**
+     * 当前排队中的写入数量
+     *
+     * @return
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    private <T> CompletableFuture<T> submit(String key, T fallback, PipelineCommandQueue.PipelineCall<T> call) {
+        return queue.submit(true, key, fallback, call, null, offerTimeoutMillis);
+    }
+
+    private void flushLoop() {
+        List<PipelineCommandQueue.Command<?>> commands = new ArrayList<PipelineCommandQueue.Command<?>>(maxBatchSize);
+        while (!queue.isDrained()) {
+            try {
+                queue.poll(commands, 100, windowMillis);
+                queue.execute(commands);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.execute(commands);
+                return;
+            } catch (Exception e) {
+                LOGGER.error("redis write batcher flush error, size={}", commands.size(), e);
+            } finally {
+                commands.clear();
+            }
+        }
+    }
+}
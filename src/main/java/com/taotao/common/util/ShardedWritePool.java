@@ -0,0 +1,95 @@
+package com.taotao.common.util;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.util.ShardInfo;
+import redis.clients.util.Sharded;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 功能描述：按key分片的master连接池
+ * <p/>
+ * 每个分片master一个JedisPool，key到分片的映射与ShardedJedisPool相同（MURMUR_HASH，分片名称/权重决定哈希环），
+ * 因此shards须与readShardedJedisPool的分片顺序、名称、权重一一对应（第N个master对应第N个只读分片）。
+ * <pre>
+ * &lt;bean id="shardedWritePool" class="com.taotao.common.util.ShardedWritePool"&gt;
+ *     &lt;constructor-arg&gt;
+ *         &lt;list&gt;
+ *             &lt;bean class="redis.clients.jedis.JedisShardInfo"&gt;
+ *                 &lt;constructor-arg value="10.0.0.1"/&gt;
+ *                 &lt;constructor-arg value="6379"/&gt;
+ *             &lt;/bean&gt;
+ *         &lt;/list&gt;
+ *     &lt;/constructor-arg&gt;
+ *     &lt;constructor-arg ref="jedisPoolConfig"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class ShardedWritePool {
+
+    private final List<JedisPool> pools = new ArrayList<JedisPool>();
+
+    private final Sharded<JedisPool, PoolShardInfo> sharded;
+
+    public ShardedWritePool(List<JedisShardInfo> shards, GenericObjectPoolConfig poolConfig) {
+        List<PoolShardInfo> infos = new ArrayList<PoolShardInfo>(shards.size());
+        for (JedisShardInfo shard : shards) {
+            infos.add(new PoolShardInfo(shard, poolConfig));
+        }
+        this.sharded = new Sharded<JedisPool, PoolShardInfo>(infos);
+        this.pools.addAll(sharded.getAllShards());
+    }
+
+    /**
+     * key所在分片的master连接池
+     *
+     * @param key
+     * @return
+     */
+    public JedisPool getPool(String key) {
+        return sharded.getShard(key);
+    }
+
+    public Collection<JedisPool> getPools() {
+        return pools;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (JedisPool pool : pools) {
+            pool.destroy();
+        }
+    }
+
+    /**
+     * 与JedisShardInfo权重、名称相同，资源为该分片的连接池
+     */
+    private static class PoolShardInfo extends ShardInfo<JedisPool> {
+
+        private final JedisShardInfo shard;
+
+        private final GenericObjectPoolConfig poolConfig;
+
+        PoolShardInfo(JedisShardInfo shard, GenericObjectPoolConfig poolConfig) {
+            super(shard.getWeight());
+            this.shard = shard;
+            this.poolConfig = poolConfig;
+        }
+
+        @Override
+        protected JedisPool createResource() {
+            return new JedisPool(poolConfig, shard.getHost(), shard.getPort(), shard.getConnectionTimeout(),
+                    shard.getSoTimeout(), shard.getPassword(), shard.getDb(), null);
+        }
+
+        @Override
+        public String getName() {
+            return shard.getName();
+        }
+    }
+}
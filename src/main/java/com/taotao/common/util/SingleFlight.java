@@ -0,0 +1,62 @@
+package com.taotao.common.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 功能描述：同一JVM内按key合并并发调用
+ * <p/>
+ * 同一个key同时只有一个线程执行调用，其他线程等待并共享该次调用的结果或异常。
+ *
+ * @param <V> 调用结果类型
+ */
+public class SingleFlight<V> {
+
+    private final ConcurrentMap<String, CompletableFuture<V>> calls = new ConcurrentHashMap<String, CompletableFuture<V>>();
+
+    public V execute(String key, Callable<V> callable) throws Exception {
+        CompletableFuture<V> future = new CompletableFuture<V>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V value = callable.call();
+            future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    /**
+     * 正在执行的调用数量
+     *
+     * @return
+     */
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private V await(CompletableFuture<V> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.taotao.common.util;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 功能描述：RedisCache字符串值压缩
+ * <p/>
+ * 超过阈值的值使用Deflater压缩，并加上两字节头（0xFF 0x01）；0xFF不会出现在UTF-8编码中，
+ * 所以压缩值和未压缩的历史值可以共存，读取时按头部判断是否需要解压。
+ */
+public class ValueCompressor {
+
+    private static final byte MAGIC = (byte) 0xFF;
+
+    private static final byte VERSION_DEFLATE = 0x01;
+
+    private static final int HEADER_LENGTH = 2;
+
+    /**
+     * 压缩阈值（UTF-8字节数）
+     */
+    private final int threshold;
+
+    /**
+     * Deflater压缩级别
+     */
+    private final int level;
+
+    private final AtomicLong compressCount = new AtomicLong();
+
+    private final AtomicLong originalBytes = new AtomicLong();
+
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private final AtomicLong compressNanos = new AtomicLong();
+
+    private final AtomicLong decompressNanos = new AtomicLong();
+
+    public ValueCompressor(int threshold) {
+        this(threshold, Deflater.BEST_SPEED);
+    }
+
+    public ValueCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * 编码字符串值：未达到阈值或压缩后没有变小时返回UTF-8字节
+     *
+     * @param value
+     * @return
+     */
+    public byte[] encode(String value) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        if (bytes.length < threshold) {
+            return bytes;
+        }
+
+        long stime = System.nanoTime();
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + HEADER_LENGTH);
+            out.write(MAGIC);
+            out.write(VERSION_DEFLATE);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (out.size() >= bytes.length) {
+                return bytes;
+            }
+            compressCount.incrementAndGet();
+            originalBytes.addAndGet(bytes.length);
+            compressedBytes.addAndGet(out.size());
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+            compressNanos.addAndGet(System.nanoTime() - stime);
+        }
+    }
+
+    /**
+     * 解码字符串值，兼容未压缩的值
+     *
+     * @param bytes
+     * @return
+     */
+    public String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (!isCompressed(bytes)) {
+            return new String(bytes, Charsets.UTF_8);
+        }
+
+        long stime = System.nanoTime();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("压缩数据不完整");
+                }
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), Charsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("解压失败", e);
+        } finally {
+            inflater.end();
+            decompressNanos.addAndGet(System.nanoTime() - stime);
+        }
+    }
+
+    public static boolean isCompressed(byte[] bytes) {
+        return bytes.length > HEADER_LENGTH && bytes[0] == MAGIC && bytes[1] == VERSION_DEFLATE;
+    }
+
+    public long getCompressCount() {
+        return compressCount.get();
+    }
+
+    public long getOriginalBytes() {
+        return originalBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public long getBytesSaved() {
+        return originalBytes.get() - compressedBytes.get();
+    }
+
+    public long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    public long getDecompressNanos() {
+        return decompressNanos.get();
+    }
+}
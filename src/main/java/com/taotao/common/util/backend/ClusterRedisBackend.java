@@ -0,0 +1,281 @@
+package com.taotao.common.util.backend;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClusterCommand;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：Redis Cluster实现
+ * <p/>
+ * 按CRC16(key) % 16384计算slot，单key命令通过JedisClusterCommand执行，MOVED时刷新slot缓存后重试，
+ * ASK时向目标节点发送ASKING后重试；多key命令按slot所在节点分组，每个节点一次pipeline（多节点并行），
+ * pipeline中返回MOVED/ASK的命令再逐条按单key方式重试，节点连接失败时刷新slot缓存后整组重试一次。读写均在master上执行。
+ * 使用hash tag（如 {user:1}:name）可以把相关key放到同一slot。
+ * <pre>
+ * &lt;bean id="clusterRedisBackend" class="com.taotao.common.util.backend.ClusterRedisBackend"&gt;
+ *     &lt;constructor-arg&gt;
+ *         &lt;set&gt;
+ *             &lt;bean class="redis.clients.jedis.HostAndPort"&gt;
+ *                 &lt;constructor-arg value="10.0.0.1"/&gt;
+ *                 &lt;constructor-arg value="7000"/&gt;
+ *             &lt;/bean&gt;
+ *         &lt;/set&gt;
+ *     &lt;/constructor-arg&gt;
+ *     &lt;constructor-arg ref="jedisPoolConfig"/&gt;
+ *     &lt;constructor-arg value="2000"/&gt;
+ *     &lt;constructor-arg value="5"/&gt;
+ * &lt;/bean&gt;
+ * &lt;property name="backend" ref="clusterRedisBackend"/&gt;
+ * </pre>
+ */
+public class ClusterRedisBackend implements RedisBackend {
+
+    private static final int SLOTS = 16384;
+
+    private final SlotConnectionHandler connectionHandler;
+
+    private final int maxAttempts;
+
+    private final ExecutorService readExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("redis-cluster-read-%d").build());
+
+    /**
+     * @param nodes       任意几个集群节点，启动时从中发现全部节点和slot分布
+     * @param poolConfig  每个节点的连接池配置
+     * @param timeout     连接、读取超时毫秒数
+     * @param maxAttempts 单条命令最多尝试次数（包括MOVED/ASK重定向和连接失败重试）
+     */
+    public ClusterRedisBackend(Set<HostAndPort> nodes, GenericObjectPoolConfig poolConfig, int timeout, int maxAttempts) {
+        this.connectionHandler = new SlotConnectionHandler(nodes, poolConfig, timeout);
+        this.maxAttempts = maxAttempts;
+        if (connectionHandler.masters().isEmpty()) {
+            throw new IllegalStateException("no cluster slots discovered from nodes " + nodes);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        readExecutor.shutdown();
+        for (JedisPool pool : connectionHandler.getNodes().values()) {
+            pool.destroy();
+        }
+    }
+
+    @Override
+    public <T> T read(String key, JedisCallback<T> callback) {
+        return run(key, callback);
+    }
+
+    @Override
+    public <T> T write(String key, JedisCallback<T> callback) {
+        return run(key, callback);
+    }
+
+    @Override
+    public <T> List<Supplier<T>> pipelineRead(List<String> keys, PipelineCallback<T> callback) {
+        return pipeline(keys, callback, true);
+    }
+
+    @Override
+    public <T> List<Supplier<T>> pipelineWrite(List<String> keys, PipelineCallback<T> callback) {
+        return pipeline(keys, callback, false);
+    }
+
+    @Override
+    public int nodeCount() {
+        return connectionHandler.masters().size();
+    }
+
+    @Override
+    public <T> T readNode(int node, JedisCallback<T> callback) {
+        List<JedisPool> masters = connectionHandler.masters();
+        if (node >= masters.size()) {
+            throw new IllegalStateException("cluster node not found, node=" + node + ", masters=" + masters.size());
+        }
+        Jedis jedis = masters.get(node).getResource();
+        try {
+            return callback.execute(jedis);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    private <T> T run(String key, final JedisCallback<T> callback) {
+        return new JedisClusterCommand<T>(connectionHandler, maxAttempts) {
+            @Override
+            public T execute(Jedis connection) {
+                return callback.execute(connection);
+            }
+        }.run(key);
+    }
+
+    /**
+     * 按slot所在节点分组pipeline；slot未知（缓存未就绪）的命令逐条按单key方式执行
+     */
+    private <T> List<Supplier<T>> pipeline(final List<String> keys, final PipelineCallback<T> callback, boolean parallel) {
+        final List<Supplier<T>> responses = new ArrayList<Supplier<T>>(Collections.<Supplier<T>>nCopies(keys.size(), null));
+        Map<JedisPool, List<Integer>> groups = new IdentityHashMap<JedisPool, List<Integer>>();
+        List<Integer> unrouted = new ArrayList<Integer>();
+        for (int i = 0; i < keys.size(); i++) {
+            JedisPool pool = connectionHandler.getSlotPool(JedisClusterCRC16.getSlot(keys.get(i)));
+            if (pool == null) {
+                unrouted.add(i);
+                continue;
+            }
+            List<Integer> group = groups.get(pool);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(pool, group);
+            }
+            group.add(i);
+        }
+
+        if (!parallel || groups.size() <= 1) {
+            for (Map.Entry<JedisPool, List<Integer>> entry : groups.entrySet()) {
+                unrouted.addAll(pipelineNode(entry.getKey(), keys, entry.getValue(), callback, responses, true));
+            }
+        } else {
+            List<Future<List<Integer>>> futures = new ArrayList<Future<List<Integer>>>(groups.size());
+            for (final Map.Entry<JedisPool, List<Integer>> entry : groups.entrySet()) {
+                futures.add(readExecutor.submit(() -> pipelineNode(entry.getKey(), keys, entry.getValue(), callback, responses, true)));
+            }
+            RuntimeException error = null;
+            for (Future<List<Integer>> future : futures) {
+                try {
+                    unrouted.addAll(future.get());
+                } catch (Exception e) {
+                    error = new IllegalStateException("cluster pipeline error", e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        for (final Integer i : unrouted) {
+            T value = run(keys.get(i), jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                Supplier<T> response = callback.apply(pipeline, i);
+                pipeline.sync();
+                return response.get();
+            });
+            responses.set(i, () -> value);
+        }
+        return responses;
+    }
+
+    /**
+     * 在一个节点上执行一次pipeline；连接失败时刷新slot缓存，retry为true时向该组第一个key的新节点整组重试一次，
+     * 已不在该节点上的命令返回MOVED后逐条重试
+     *
+     * @return 返回MOVED/ASK、需要逐条重试的命令序号
+     */
+    private <T> List<Integer> pipelineNode(JedisPool pool, List<String> keys, List<Integer> indexes, PipelineCallback<T> callback,
+                                           List<Supplier<T>> responses, boolean retry) {
+        try {
+            Jedis jedis = pool.getResource();
+            try {
+                Pipeline pipeline = jedis.pipelined();
+                for (Integer i : indexes) {
+                    responses.set(i, callback.apply(pipeline, i));
+                }
+                pipeline.sync();
+            } finally {
+                jedis.close();
+            }
+        } catch (JedisConnectionException e) {
+            connectionHandler.renewSlotCache();
+            JedisPool retryPool = retry ? connectionHandler.getSlotPool(JedisClusterCRC16.getSlot(keys.get(indexes.get(0)))) : null;
+            if (retryPool == null) {
+                throw e;
+            }
+            return pipelineNode(retryPool, keys, indexes, callback, responses, false);
+        }
+
+        List<Integer> redirected = new ArrayList<Integer>();
+        boolean moved = false;
+        for (Integer i : indexes) {
+            try {
+                responses.get(i).get();
+            } catch (JedisRedirectionException e) {
+                moved |= e instanceof JedisMovedDataException;
+                redirected.add(i);
+            } catch (RuntimeException e) {
+                // 其他命令错误由调用方获取结果时处理
+            }
+        }
+        if (moved) {
+            connectionHandler.renewSlotCache();
+        }
+        return redirected;
+    }
+
+    /**
+     * 暴露slot到节点连接池的映射，用于多key命令按节点分组；全部master节点在刷新slot缓存后重新计算
+     */
+    private static class SlotConnectionHandler extends JedisSlotBasedConnectionHandler {
+
+        private volatile List<JedisPool> masters;
+
+        SlotConnectionHandler(Set<HostAndPort> nodes, GenericObjectPoolConfig poolConfig, int timeout) {
+            super(nodes, poolConfig, timeout);
+        }
+
+        JedisPool getSlotPool(int slot) {
+            return cache.getSlotPool(slot);
+        }
+
+        /**
+         * 全部master节点，按slot顺序去重
+         */
+        List<JedisPool> masters() {
+            List<JedisPool> current = masters;
+            if (current == null) {
+                Set<JedisPool> pools = new LinkedHashSet<JedisPool>();
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    JedisPool pool = cache.getSlotPool(slot);
+                    if (pool != null) {
+                        pools.add(pool);
+                    }
+                }
+                current = Collections.unmodifiableList(new ArrayList<JedisPool>(pools));
+                masters = current;
+            }
+            return current;
+        }
+
+        @Override
+        public void renewSlotCache() {
+            super.renewSlotCache();
+            masters = null;
+        }
+
+        @Override
+        public void renewSlotCache(Jedis jedis) {
+            super.renewSlotCache(jedis);
+            masters = null;
+        }
+    }
+}
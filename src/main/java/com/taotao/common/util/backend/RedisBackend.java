@@ -0,0 +1,106 @@
+package com.taotao.common.util.backend;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：RedisCache连接路由接口，决定key由哪个节点执行，实现类需线程安全
+ * <p/>
+ * 单key命令通过回调在key所在节点的连接上执行，连接由实现类获取和归还；
+ * 多key命令按节点分组，每个节点一次pipeline。
+ */
+public interface RedisBackend {
+
+    /**
+     * 在key所在的读节点上执行
+     *
+     * @param key
+     * @param callback
+     * @param <T>
+     * @return
+     */
+    <T> T read(String key, JedisCallback<T> callback);
+
+    /**
+     * 在key所在的读节点上执行，key作为回调参数传入，热点读取可以使用无捕获的静态回调，避免每次调用分配回调对象
+     *
+     * @param key
+     * @param callback
+     * @param <T>
+     * @return
+     */
+    default <T> T readKey(String key, KeyCallback<T> callback) {
+        return read(key, jedis -> callback.execute(jedis, key));
+    }
+
+    /**
+     * 在key所在的master上执行
+     *
+     * @param key
+     * @param callback
+     * @param <T>
+     * @return
+     */
+    <T> T write(String key, JedisCallback<T> callback);
+
+    /**
+     * 多key读取：按读节点分组，每个节点一次pipeline，多节点时可以并行
+     *
+     * @param keys     每条命令对应的key
+     * @param callback 向pipeline写入第i条命令
+     * @param <T>
+     * @return 每条命令sync后获取结果的Supplier，顺序与keys一致
+     */
+    <T> List<Supplier<T>> pipelineRead(List<String> keys, PipelineCallback<T> callback);
+
+    /**
+     * 多key写入：按master分组，每个master一次pipeline
+     *
+     * @param keys     每条命令对应的key
+     * @param callback 向pipeline写入第i条命令
+     * @param <T>
+     * @return 每条命令sync后获取结果的Supplier，顺序与keys一致
+     */
+    <T> List<Supplier<T>> pipelineWrite(List<String> keys, PipelineCallback<T> callback);
+
+    /**
+     * 遍历全部key（SCAN）时需要访问的节点数量
+     *
+     * @return
+     */
+    int nodeCount();
+
+    /**
+     * 在第node个节点上执行（SCAN）
+     *
+     * @param node     0到nodeCount()-1
+     * @param callback
+     * @param <T>
+     * @return
+     */
+    <T> T readNode(int node, JedisCallback<T> callback);
+
+    /**
+     * 在某个节点的连接上执行的命令
+     */
+    interface JedisCallback<T> {
+        T execute(Jedis jedis);
+    }
+
+    /**
+     * 在key所在节点的连接上执行的单key命令
+     */
+    interface KeyCallback<T> {
+        T execute(Jedis jedis, String key);
+    }
+
+    /**
+     * 向pipeline写入第i条命令，返回sync后获取结果的Supplier
+     */
+    interface PipelineCallback<T> {
+        Supplier<T> apply(Pipeline pipeline, int i);
+    }
+}
@@ -0,0 +1,175 @@
+package com.taotao.common.util.backend;
+
+import com.taotao.common.util.ShardedWritePool;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * 功能描述：客户端分片实现：读取走ShardedJedisPool（只读分片），写入走master JedisPool，
+ * 配置了ShardedWritePool时按key写入对应分片的master
+ */
+public class ShardedRedisBackend implements RedisBackend {
+
+    private final ShardedJedisPool readPool;
+
+    private final JedisPool writePool;
+
+    private final ShardedWritePool shardedWritePool;
+
+    private final ExecutorService readExecutor;
+
+    /**
+     * @param readPool         只读分片连接池
+     * @param writePool        master连接池
+     * @param shardedWritePool 按key分片的master连接池，为空时全部写入writePool
+     * @param readExecutor     多分片并行读取线程池，为空时依次读取
+     */
+    public ShardedRedisBackend(ShardedJedisPool readPool, JedisPool writePool, ShardedWritePool shardedWritePool,
+                               ExecutorService readExecutor) {
+        this.readPool = readPool;
+        this.writePool = writePool;
+        this.shardedWritePool = shardedWritePool;
+        this.readExecutor = readExecutor;
+    }
+
+    @Override
+    public <T> T read(String key, JedisCallback<T> callback) {
+        ShardedJedis jedis = readPool.getResource();
+        try {
+            return callback.execute(jedis.getShard(key));
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public <T> T readKey(String key, KeyCallback<T> callback) {
+        ShardedJedis jedis = readPool.getResource();
+        try {
+            return callback.execute(jedis.getShard(key), key);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public <T> T write(String key, JedisCallback<T> callback) {
+        Jedis jedis = writePool(key).getResource();
+        try {
+            return callback.execute(jedis);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public <T> List<Supplier<T>> pipelineRead(List<String> keys, final PipelineCallback<T> callback) {
+        final List<Supplier<T>> responses = new ArrayList<Supplier<T>>(Collections.<Supplier<T>>nCopies(keys.size(), null));
+        ShardedJedis jedis = readPool.getResource();
+        try {
+            Map<Jedis, List<Integer>> groups = new IdentityHashMap<Jedis, List<Integer>>();
+            for (int i = 0; i < keys.size(); i++) {
+                Jedis shard = jedis.getShard(keys.get(i));
+                List<Integer> group = groups.get(shard);
+                if (group == null) {
+                    group = new ArrayList<Integer>();
+                    groups.put(shard, group);
+                }
+                group.add(i);
+            }
+            if (groups.size() == 1 || readExecutor == null) {
+                for (Map.Entry<Jedis, List<Integer>> entry : groups.entrySet()) {
+                    pipeline(entry.getKey(), entry.getValue(), callback, responses);
+                }
+                return responses;
+            }
+            List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+            for (final Map.Entry<Jedis, List<Integer>> entry : groups.entrySet()) {
+                futures.add(readExecutor.submit(() -> pipeline(entry.getKey(), entry.getValue(), callback, responses)));
+            }
+            // 必须等待所有分片结束后才能归还连接
+            RuntimeException error = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    error = new IllegalStateException("pipeline read error", e.getCause() != null ? e.getCause() : e);
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return responses;
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public <T> List<Supplier<T>> pipelineWrite(List<String> keys, PipelineCallback<T> callback) {
+        Map<JedisPool, List<Integer>> groups = new IdentityHashMap<JedisPool, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++) {
+            JedisPool pool = writePool(keys.get(i));
+            List<Integer> group = groups.get(pool);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(pool, group);
+            }
+            group.add(i);
+        }
+        List<Supplier<T>> responses = new ArrayList<Supplier<T>>(Collections.<Supplier<T>>nCopies(keys.size(), null));
+        for (Map.Entry<JedisPool, List<Integer>> entry : groups.entrySet()) {
+            Jedis jedis = entry.getKey().getResource();
+            try {
+                pipeline(jedis, entry.getValue(), callback, responses);
+            } finally {
+                jedis.close();
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public int nodeCount() {
+        ShardedJedis jedis = readPool.getResource();
+        try {
+            return jedis.getAllShards().size();
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public <T> T readNode(int node, JedisCallback<T> callback) {
+        ShardedJedis jedis = readPool.getResource();
+        try {
+            return callback.execute(new ArrayList<Jedis>(jedis.getAllShards()).get(node));
+        } finally {
+            jedis.close();
+        }
+    }
+
+    private JedisPool writePool(String key) {
+        return shardedWritePool != null ? shardedWritePool.getPool(key) : writePool;
+    }
+
+    private static <T> void pipeline(Jedis jedis, List<Integer> indexes, PipelineCallback<T> callback, List<Supplier<T>> responses) {
+        Pipeline pipeline = jedis.pipelined();
+        for (Integer i : indexes) {
+            responses.set(i, callback.apply(pipeline, i));
+        }
+        pipeline.sync();
+    }
+}
@@ -0,0 +1,185 @@
+package com.taotao.common.util.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 功能描述：基于HdrHistogram的RedisCache指标采集，并注册为JMX MBean
+ * <p/>
+ * 记录为无锁操作；超过上限的值按上限记录。
+ * <pre>
+ * &lt;bean id="redisMetrics" class="com.taotao.common.util.metrics.HdrRedisMetrics"/&gt;
+ * &lt;property name="metrics" ref="redisMetrics"/&gt;
+ * </pre>
+ */
+public class HdrRedisMetrics implements RedisMetrics, HdrRedisMetricsMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HdrRedisMetrics.class);
+
+    private static final String DEFAULT_OBJECT_NAME = "com.taotao.common:type=RedisMetrics";
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final long MAX_PAYLOAD_SIZE = 64L * 1024 * 1024;
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final ConcurrentMap<String, Histogram> latencies = new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, Histogram> borrows = new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, Histogram> payloads = new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+    private String objectName = DEFAULT_OBJECT_NAME;
+
+    @PostConstruct
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            LOGGER.error("register redis metrics mbean error, objectName={}", objectName, e);
+        }
+    }
+
+    @PreDestroy
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.error("unregister redis metrics mbean error, objectName={}", objectName, e);
+        }
+    }
+
+    @Override
+    public void recordLatency(String command, long nanos) {
+        record(latencies, command, nanos, MAX_LATENCY_NANOS);
+    }
+
+    @Override
+    public void recordBorrow(String pool, long nanos) {
+        record(borrows, pool, nanos, MAX_LATENCY_NANOS);
+    }
+
+    @Override
+    public void recordError(String command, Throwable error) {
+        errors.computeIfAbsent(command + ':' + error.getClass().getName(), key -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Override
+    public void recordPayloadSize(String command, int size) {
+        record(payloads, command, size, MAX_PAYLOAD_SIZE);
+    }
+
+    public Histogram getLatency(String command) {
+        return snapshot(latencies, command);
+    }
+
+    public Histogram getBorrow(String pool) {
+        return snapshot(borrows, pool);
+    }
+
+    public Histogram getPayloadSize(String command) {
+        return snapshot(payloads, command);
+    }
+
+    public long getErrorCount(String command, Class<? extends Throwable> type) {
+        AtomicLong count = errors.get(command + ':' + type.getName());
+        return count == null ? 0L : count.get();
+    }
+
+    @Override
+    public String getLatencyReport() {
+        return report(latencies, 1000.0D);
+    }
+
+    @Override
+    public String getBorrowReport() {
+        return report(borrows, 1000.0D);
+    }
+
+    @Override
+    public String getPayloadReport() {
+        return report(payloads, 1.0D);
+    }
+
+    @Override
+    public String getErrorReport() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(errors).entrySet()) {
+            sb.append(entry.getKey()).append(" count=").append(entry.getValue().get()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        latencies.clear();
+        borrows.clear();
+        payloads.clear();
+        errors.clear();
+    }
+
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    private static void record(ConcurrentMap<String, Histogram> histograms, String name, long value, long max) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name, key -> new ConcurrentHistogram(max, SIGNIFICANT_DIGITS));
+        }
+        histogram.recordValue(Math.max(0L, Math.min(value, max)));
+    }
+
+    private static Histogram snapshot(ConcurrentMap<String, Histogram> histograms, String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram == null ? null : histogram.copy();
+    }
+
+    /**
+     * @param scale 输出前除以的比例，纳秒转微秒为1000
+     */
+    private static String report(ConcurrentMap<String, Histogram> histograms, double scale) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : new TreeMap<String, Histogram>(histograms).keySet()) {
+            Histogram histogram = snapshot(histograms, name);
+            if (histogram == null) {
+                continue;
+            }
+            sb.append(name)
+                    .append(" count=").append(histogram.getTotalCount())
+                    .append(String.format(" mean=%.1f p50=%.1f p99=%.1f p999=%.1f max=%.1f",
+                            histogram.getMean() / scale,
+                            histogram.getValueAtPercentile(50) / scale,
+                            histogram.getValueAtPercentile(99) / scale,
+                            histogram.getValueAtPercentile(99.9) / scale,
+                            histogram.getMaxValue() / scale))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.taotao.common.util.metrics;
+
+/**
+ * 功能描述：HdrRedisMetrics JMX接口
+ */
+public interface HdrRedisMetricsMBean {
+
+    /**
+     * 每条命令的耗时分布（微秒）
+     */
+    String getLatencyReport();
+
+    /**
+     * 每个连接池获取连接的等待时间分布（微秒）
+     */
+    String getBorrowReport();
+
+    /**
+     * 每条命令的值大小分布
+     */
+    String getPayloadReport();
+
+    /**
+     * 按命令和异常类型统计的异常次数
+     */
+    String getErrorReport();
+
+    /**
+     * 清空所有统计
+     */
+    void reset();
+}
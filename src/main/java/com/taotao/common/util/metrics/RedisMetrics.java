@@ -0,0 +1,60 @@
+package com.taotao.common.util.metrics;
+
+/**
+ * 功能描述：RedisCache指标采集接口，实现类需线程安全且足够轻量（每条命令都会调用）
+ */
+public interface RedisMetrics {
+
+    /**
+     * 不采集
+     */
+    RedisMetrics NOOP = new RedisMetrics() {
+        @Override
+        public void recordLatency(String command, long nanos) {
+        }
+
+        @Override
+        public void recordBorrow(String pool, long nanos) {
+        }
+
+        @Override
+        public void recordError(String command, Throwable error) {
+        }
+
+        @Override
+        public void recordPayloadSize(String command, int size) {
+        }
+    };
+
+    /**
+     * 命令耗时（包括从连接池获取连接）
+     *
+     * @param command 命令名称
+     * @param nanos   纳秒
+     */
+    void recordLatency(String command, long nanos);
+
+    /**
+     * 从连接池获取连接的等待时间
+     *
+     * @param pool  连接池名称
+     * @param nanos 纳秒
+     */
+    void recordBorrow(String pool, long nanos);
+
+    /**
+     * 命令异常
+     *
+     * @param command 命令名称
+     * @param error   异常
+     */
+    void recordError(String command, Throwable error);
+
+    /**
+     * 读写值的大小
+     *
+     * @param command 命令名称
+     * @param size    字符串为字符数，对象为序列化后的字节数
+     */
+    void recordPayloadSize(String command, int size);
+}
@@ -0,0 +1,211 @@
+package com.taotao.common.util.serializer;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 功能描述：默认的紧凑二进制序列化
+ * <p/>
+ * 首字节为类型标识：String、byte[]、基本包装类型直接编码，不经过中间对象；
+ * 其他实现Serializable的对象使用JDK序列化。反序列化JDK序列化内容时只允许加载白名单中的类：
+ * 内置常用的值类型和集合类型，业务DTO（包括其父类、字段类型、枚举）须通过allowedClasses配置，
+ * 支持完整类名或以 .* 结尾的包前缀，不在白名单中的类拒绝反序列化，避免从Redis读取到的数据触发反序列化漏洞。
+ * <pre>
+ * &lt;bean id="redisSerializer" class="com.taotao.common.util.serializer.BinarySerializer"&gt;
+ *     &lt;property name="allowedClasses"&gt;
+ *         &lt;list&gt;
+ *             &lt;value&gt;com.taotao.order.dto.*&lt;/value&gt;
+ *             &lt;value&gt;com.taotao.common.pojo.TaotaoResult&lt;/value&gt;
+ *         &lt;/list&gt;
+ *     &lt;/property&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ */
+public class BinarySerializer implements Serializer {
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BYTES = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_INTEGER = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+    private static final byte TYPE_FLOAT = 7;
+    private static final byte TYPE_SHORT = 8;
+    private static final byte TYPE_SERIALIZABLE = 9;
+
+    /**
+     * JDK序列化内置允许的类
+     */
+    private static final Set<String> DEFAULT_ALLOWED_CLASSES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Number",
+            "java.lang.Enum", "java.math.BigDecimal", "java.math.BigInteger", "java.util.Date", "java.sql.Date",
+            "java.sql.Timestamp", "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap",
+            "java.util.LinkedHashMap", "java.util.TreeMap", "java.util.HashSet", "java.util.LinkedHashSet",
+            "java.util.TreeSet")));
+
+    private volatile Set<String> allowedClasses = Collections.emptySet();
+
+    private volatile List<String> allowedPackages = Collections.emptyList();
+
+    @Override
+    public byte[] serialize(Object value) {
+        if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(Charsets.UTF_8);
+            return ByteBuffer.allocate(bytes.length + 1).put(TYPE_STRING).put(bytes).array();
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            return ByteBuffer.allocate(bytes.length + 1).put(TYPE_BYTES).put(bytes).array();
+        } else if (value instanceof Long) {
+            return ByteBuffer.allocate(9).put(TYPE_LONG).putLong((Long) value).array();
+        } else if (value instanceof Integer) {
+            return ByteBuffer.allocate(5).put(TYPE_INTEGER).putInt((Integer) value).array();
+        } else if (value instanceof Double) {
+            return ByteBuffer.allocate(9).put(TYPE_DOUBLE).putDouble((Double) value).array();
+        } else if (value instanceof Boolean) {
+            return new byte[]{TYPE_BOOLEAN, (byte) ((Boolean) value ? 1 : 0)};
+        } else if (value instanceof Float) {
+            return ByteBuffer.allocate(5).put(TYPE_FLOAT).putFloat((Float) value).array();
+        } else if (value instanceof Short) {
+            return ByteBuffer.allocate(3).put(TYPE_SHORT).putShort((Short) value).array();
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            out.write(TYPE_SERIALIZABLE);
+            try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(value);
+            } catch (IOException e) {
+                throw new IllegalStateException("序列化失败, type=" + value.getClass().getName(), e);
+            }
+            return out.toByteArray();
+        }
+        throw new IllegalArgumentException("不支持序列化的类型, type=" + value.getClass().getName());
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> type) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("反序列化内容为空");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        Object value;
+        switch (bytes[0]) {
+            case TYPE_STRING:
+                value = new String(bytes, 1, bytes.length - 1, Charsets.UTF_8);
+                break;
+            case TYPE_BYTES:
+                value = Arrays.copyOfRange(bytes, 1, bytes.length);
+                break;
+            case TYPE_LONG:
+                value = buffer.getLong();
+                break;
+            case TYPE_INTEGER:
+                value = buffer.getInt();
+                break;
+            case TYPE_DOUBLE:
+                value = buffer.getDouble();
+                break;
+            case TYPE_BOOLEAN:
+                value = bytes[1] != 0;
+                break;
+            case TYPE_FLOAT:
+                value = buffer.getFloat();
+                break;
+            case TYPE_SHORT:
+                value = buffer.getShort();
+                break;
+            case TYPE_SERIALIZABLE:
+                try (ObjectInputStream ois = new AllowlistObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+                    value = ois.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new IllegalStateException("反序列化失败, type=" + type.getName(), e);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知的序列化类型标识: " + bytes[0]);
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * 配置JDK序列化允许反序列化的类
+     *
+     * @param allowedClasses 完整类名，或以 .* 结尾的包前缀（包含子包）
+     */
+    public void setAllowedClasses(List<String> allowedClasses) {
+        Set<String> classes = new HashSet<String>();
+        List<String> packages = new ArrayList<String>();
+        for (String allowed : allowedClasses) {
+            String name = allowed.trim();
+            if (name.endsWith(".*")) {
+                packages.add(name.substring(0, name.length() - 1));
+            } else if (!name.isEmpty()) {
+                classes.add(name);
+            }
+        }
+        this.allowedClasses = classes;
+        this.allowedPackages = packages;
+    }
+
+    boolean isAllowed(String className) {
+        String name = className;
+        if (name.startsWith("[")) {
+            // 数组：基本类型数组直接允许，对象数组检查元素类型
+            name = name.substring(name.lastIndexOf('[') + 1);
+            if (name.length() == 1) {
+                return true;
+            }
+            if (!name.startsWith("L") || !name.endsWith(";")) {
+                return false;
+            }
+            name = name.substring(1, name.length() - 1);
+        }
+        if (DEFAULT_ALLOWED_CLASSES.contains(name) || allowedClasses.contains(name)) {
+            return true;
+        }
+        for (String allowedPackage : allowedPackages) {
+            if (name.startsWith(allowedPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只加载白名单中类的ObjectInputStream，拒绝动态代理
+     */
+    private class AllowlistObjectInputStream extends ObjectInputStream {
+
+        AllowlistObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "不在反序列化白名单中");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("不允许反序列化动态代理, interfaces=" + Arrays.toString(interfaces));
+        }
+    }
+}
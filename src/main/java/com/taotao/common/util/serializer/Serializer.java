@@ -0,0 +1,25 @@
+package com.taotao.common.util.serializer;
+
+/**
+ * 功能描述：RedisCache对象序列化接口，实现类需线程安全
+ */
+public interface Serializer {
+
+    /**
+     * 对象序列化为字节数组
+     *
+     * @param value 不为null
+     * @return
+     */
+    byte[] serialize(Object value);
+
+    /**
+     * 字节数组反序列化为对象
+     *
+     * @param bytes 不为null
+     * @param type  目标类型
+     * @param <T>
+     * @return
+     */
+    <T> T deserialize(byte[] bytes, Class<T> type);
+}
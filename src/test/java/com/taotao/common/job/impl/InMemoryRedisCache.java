@@ -0,0 +1,161 @@
+package com.taotao.common.job.impl;
+
+import com.taotao.common.util.RedisCache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 门阀测试使用的内存RedisCache，只实现JobSwitchSupporterImpl用到的命令；
+ * down为true时按RedisCache出错时的返回值模拟redis不可用
+ */
+class InMemoryRedisCache extends RedisCache {
+
+    private final Map<String, String> values = new HashMap<String, String>();
+
+    private final Map<String, Long> expireAt = new HashMap<String, Long>();
+
+    private final Map<String, Map<String, String>> hashes = new HashMap<String, Map<String, String>>();
+
+    final AtomicInteger renewals = new AtomicInteger();
+
+    volatile boolean down;
+
+    @Override
+    public synchronized Boolean setLease(String key, String value, int seconds) {
+        if (down) {
+            return null;
+        }
+        put(key, value, seconds);
+        return true;
+    }
+
+    @Override
+    public synchronized String get(String key, boolean fromMaster) {
+        return down ? null : value(key);
+    }
+
+    @Override
+    public synchronized Long del(String key) {
+        if (down) {
+            return null;
+        }
+        boolean existed = value(key) != null;
+        values.remove(key);
+        expireAt.remove(key);
+        return existed ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized Long acquireLease(String key, String owner, int seconds) {
+        if (down) {
+            return null;
+        }
+        if (value(key) != null) {
+            return 0L;
+        }
+        put(key, owner, seconds);
+        return 1L;
+    }
+
+    @Override
+    public synchronized Long renewLease(String key, String owner, int seconds) {
+        if (down) {
+            return null;
+        }
+        renewals.incrementAndGet();
+        if (!owner.equals(value(key))) {
+            return 0L;
+        }
+        expireAt.put(key, System.currentTimeMillis() + seconds * 1000L);
+        return 1L;
+    }
+
+    @Override
+    public synchronized Long releaseLease(String key, String owner) {
+        if (down) {
+            return null;
+        }
+        if (!owner.equals(value(key))) {
+            return 0L;
+        }
+        values.remove(key);
+        expireAt.remove(key);
+        return 1L;
+    }
+
+    @Override
+    public synchronized Long nextFencingToken(String key) {
+        if (down) {
+            return null;
+        }
+        String current = value(key);
+        long next = current == null ? 1L : Long.parseLong(current) + 1;
+        values.put(key, String.valueOf(next));
+        return next;
+    }
+
+    @Override
+    public synchronized Long hsetLease(String key, String field, String value, int seconds) {
+        if (down) {
+            return null;
+        }
+        Map<String, String> hash = hashes.get(key);
+        if (hash == null) {
+            hash = new LinkedHashMap<String, String>();
+            hashes.put(key, hash);
+        }
+        return hash.put(field, value) == null ? 1L : 0L;
+    }
+
+    @Override
+    public synchronized Map<String, String> hgetAll(String key) {
+        if (down) {
+            return null;
+        }
+        Map<String, String> hash = hashes.get(key);
+        return hash == null ? new HashMap<String, String>() : new HashMap<String, String>(hash);
+    }
+
+    @Override
+    public synchronized Map<String, String> hgetAll(String key, boolean fromMaster) {
+        return hgetAll(key);
+    }
+
+    @Override
+    public synchronized Long hdel(String key, String field) {
+        if (down) {
+            return null;
+        }
+        Map<String, String> hash = hashes.get(key);
+        return hash != null && hash.remove(field) != null ? 1L : 0L;
+    }
+
+    synchronized String value(String key) {
+        Long deadline = expireAt.get(key);
+        if (deadline != null && deadline <= System.currentTimeMillis()) {
+            values.remove(key);
+            expireAt.remove(key);
+        }
+        return values.get(key);
+    }
+
+    /**
+     * 剩余存活毫秒数，key不存在或未设置过期时间时返回-1
+     */
+    synchronized long ttlMillis(String key) {
+        Long deadline = value(key) == null ? null : expireAt.get(key);
+        return deadline == null ? -1L : deadline - System.currentTimeMillis();
+    }
+
+    synchronized void put(String key, String value, int seconds) {
+        values.put(key, value);
+        if (seconds > 0) {
+            expireAt.put(key, System.currentTimeMillis() + seconds * 1000L);
+        } else {
+            expireAt.remove(key);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.taotao.common.job.impl;
+
+import com.taotao.common.job.JobLock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobSwitchSupporterImplTest {
+
+    private static final JobRedisCacheKey JOB = JobRedisCacheKey.FETCH_ORDER_CALCULATE;
+
+    private InMemoryRedisCache redisCache;
+
+    private JobSwitchSupporterImpl supporter;
+
+    @Before
+    public void setUp() {
+        redisCache = new InMemoryRedisCache();
+        supporter = new JobSwitchSupporterImpl();
+        supporter.setRedisCache(redisCache);
+    }
+
+    @After
+    public void tearDown() {
+        supporter.destroy();
+    }
+
+    @Test
+    public void holdsLockWithOwnTokenAndReleasesIt() {
+        Long fencingToken = supporter.fencedSupporter(JOB, jobLock -> {
+            assertEquals(jobLock.getOwnerToken(), redisCache.value(JOB.getKey()));
+            return jobLock.getFencingToken();
+        });
+        assertEquals(Long.valueOf(1L), fencingToken);
+        assertNull(redisCache.value(JOB.getKey()));
+    }
+
+    @Test
+    public void fencingTokenIncreasesPerLock() {
+        supporter.fencedSupporter(JOB, JobLock::getFencingToken);
+        assertEquals(Long.valueOf(2L), supporter.fencedSupporter(JOB, JobLock::getFencingToken));
+    }
+
+    @Test
+    public void skipsWhileOtherNodeHoldsLock() {
+        redisCache.put(JOB.getKey(), "other", 60);
+        AtomicBoolean executed = new AtomicBoolean();
+        assertNull(supporter.fencedSupporter(JOB, jobLock -> executed.getAndSet(true)));
+        assertFalse(executed.get());
+        assertEquals("other", redisCache.value(JOB.getKey()));
+    }
+
+    @Test
+    public void doesNotReleaseLockTakenOverByOtherNode() {
+        supporter.fencedSupporter(JOB, jobLock -> {
+            redisCache.put(JOB.getKey(), "other", 60);
+            return null;
+        });
+        assertEquals("other", redisCache.value(JOB.getKey()));
+    }
+
+    @Test
+    public void releasesLockWhenJobThrows() {
+        supporter.fencedSupporter(JOB, jobLock -> {
+            throw new IllegalStateException("job failed");
+        });
+        assertNull(redisCache.value(JOB.getKey()));
+    }
+
+    @Test
+    public void skipsWhenRedisUnavailable() {
+        redisCache.down = true;
+        AtomicBoolean executed = new AtomicBoolean();
+        assertNull(supporter.fencedSupporter(JOB, jobLock -> executed.getAndSet(true)));
+        assertFalse(executed.get());
+    }
+
+    @Test
+    public void renewsLeaseWhileJobRuns() {
+        supporter.setLeaseSeconds(1);
+        Boolean held = supporter.fencedSupporter(JOB, jobLock -> {
+            sleep(1500L);
+            // 没有续期时门阀1秒后即过期
+            return jobLock.getOwnerToken().equals(redisCache.value(JOB.getKey()));
+        });
+        assertTrue(held);
+        assertTrue(redisCache.renewals.get() >= 2);
+        assertNull(redisCache.value(JOB.getKey()));
+    }
+
+    @Test
+    public void lockBecomesInvalidWhenTakenOver() {
+        supporter.setLeaseSeconds(1);
+        Boolean[] validity = supporter.fencedSupporter(JOB, jobLock -> {
+            boolean before = jobLock.isValid();
+            redisCache.put(JOB.getKey(), "other", 60);
+            sleep(600L);
+            return new Boolean[]{before, jobLock.isValid()};
+        });
+        assertTrue(validity[0]);
+        assertFalse(validity[1]);
+    }
+
+    @Test
+    public void lockExpiresWhenRenewalsFail() {
+        supporter.setLeaseSeconds(1);
+        Boolean valid = supporter.fencedSupporter(JOB, jobLock -> {
+            redisCache.down = true;
+            sleep(1200L);
+            return jobLock.isValid();
+        });
+        assertFalse(valid);
+    }
+
+    @Test
+    public void stopsRenewingAfterJobEnds() {
+        supporter.setLeaseSeconds(1);
+        supporter.fencedSupporter(JOB, jobLock -> null);
+        int renewals = redisCache.renewals.get();
+        sleep(500L);
+        assertEquals(renewals, redisCache.renewals.get());
+    }
+
+    @Test
+    public void partitionsAreSplitBetweenLiveMembers() {
+        JobSwitchSupporterImpl other = newSupporter();
+        try {
+            assertEquals(partitions(0, 1, 2, 3), supporter.partitionedSupporter(JOB, 4, partitions -> partitions));
+            Set<Integer> otherPartitions = other.partitionedSupporter(JOB, 4, partitions -> partitions);
+            Set<Integer> ownPartitions = supporter.partitionedSupporter(JOB, 4, partitions -> partitions);
+            assertEquals(2, otherPartitions.size());
+            assertEquals(2, ownPartitions.size());
+            Set<Integer> all = new TreeSet<Integer>(otherPartitions);
+            all.addAll(ownPartitions);
+            assertEquals(partitions(0, 1, 2, 3), all);
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void removesMemberWhoseHeartbeatExpired() {
+        JobSwitchSupporterImpl other = newSupporter();
+        try {
+            supporter.partitionedSupporter(JOB, 4, partitions -> partitions);
+            other.partitionedSupporter(JOB, 4, partitions -> partitions);
+            // 模拟节点宕机：心跳KEY过期，成员登记仍在
+            redisCache.del(JOB.getKey() + ":member:" + other.getNodeId());
+            assertEquals(partitions(0, 1, 2, 3), supporter.partitionedSupporter(JOB, 4, partitions -> partitions));
+            assertFalse(redisCache.hgetAll(JOB.getKey() + ":members").containsKey(other.getNodeId()));
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void partitionLockUsesMemberTimeoutWithoutLease() {
+        supporter.setMemberTimeoutSeconds(3);
+        long ttlMillis = supporter.partitionedSupporter(JOB, 1, partitions -> redisCache.ttlMillis(JOB.getKey() + ":partition:0"));
+        assertTrue(ttlMillis > 0 && ttlMillis <= 3000L);
+    }
+
+    @Test
+    public void leaderSkipsOverlappingRuns() throws Exception {
+        supporter.setLeaderLeaseSeconds(5);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> supporter.fencedSupporter(JOB, jobLock -> {
+            started.countDown();
+            await(release);
+            return null;
+        }));
+        first.start();
+        try {
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            AtomicBoolean executed = new AtomicBoolean();
+            assertNull(supporter.fencedSupporter(JOB, jobLock -> executed.getAndSet(true)));
+            assertFalse(executed.get());
+        } finally {
+            release.countDown();
+            first.join();
+        }
+        assertEquals(Long.valueOf(1L), supporter.fencedSupporter(JOB, JobLock::getFencingToken));
+    }
+
+    @Test
+    public void leaderLockBecomesInvalidWhenTermIsLost() {
+        supporter.setLeaderLeaseSeconds(1);
+        Boolean valid = supporter.fencedSupporter(JOB, jobLock -> {
+            redisCache.put(supporter.getLeaderGroup() + ":leader", "other", 60);
+            sleep(600L);
+            return jobLock.isValid();
+        });
+        assertFalse(valid);
+        assertFalse(supporter.isLeader());
+    }
+
+    private JobSwitchSupporterImpl newSupporter() {
+        JobSwitchSupporterImpl other = new JobSwitchSupporterImpl();
+        other.setRedisCache(redisCache);
+        return other;
+    }
+
+    private static Set<Integer> partitions(Integer... partitions) {
+        return new TreeSet<Integer>(Arrays.asList(partitions));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
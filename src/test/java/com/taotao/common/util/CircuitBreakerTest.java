@@ -0,0 +1,134 @@
+package com.taotao.common.util;
+
+import com.taotao.common.util.CircuitBreaker.CircuitBreakerOpenException;
+import com.taotao.common.util.CircuitBreaker.State;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    private CircuitBreaker circuitBreaker;
+
+    private final List<String> transitions = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        circuitBreaker = new CircuitBreaker("test");
+        circuitBreaker.setMinimumCalls(4);
+        circuitBreaker.setFailureRateThreshold(0.5D);
+        circuitBreaker.setOpenMillis(50L);
+        circuitBreaker.setHalfOpenCalls(2);
+        circuitBreaker.addListener((name, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        failedCall();
+        failedCall();
+        failedCall();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void opensWhenFailureRateReached() {
+        successfulCall();
+        successfulCall();
+        failedCall();
+        failedCall();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals("[CLOSED->OPEN]", transitions.toString());
+    }
+
+    @Test
+    public void opensWhenSlowCallRateReached() {
+        circuitBreaker.setSlowCallMillis(1L);
+        circuitBreaker.setSlowCallRateThreshold(0.5D);
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.onComplete(2000000L);
+        }
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void rejectsCallsWhileOpen() {
+        open();
+        try {
+            circuitBreaker.acquire();
+            fail("expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException e) {
+            // 拒绝的调用不计入统计
+            circuitBreaker.onError(e);
+            circuitBreaker.onComplete(0L);
+        }
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals(1, transitions.size());
+    }
+
+    @Test
+    public void closesAfterSuccessfulHalfOpenCalls() throws InterruptedException {
+        open();
+        Thread.sleep(60L);
+        successfulCall();
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        successfulCall();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void reopensOnHalfOpenFailure() throws InterruptedException {
+        open();
+        Thread.sleep(60L);
+        failedCall();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", transitions.toString());
+    }
+
+    @Test
+    public void limitsHalfOpenPermits() throws InterruptedException {
+        open();
+        Thread.sleep(60L);
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        try {
+            circuitBreaker.acquire();
+            fail("expected CircuitBreakerOpenException");
+        } catch (CircuitBreakerOpenException expected) {
+            assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        }
+    }
+
+    @Test
+    public void disabledNeverOpens() {
+        circuitBreaker = CircuitBreaker.disabled("disabled");
+        for (int i = 0; i < 100; i++) {
+            failedCall();
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            failedCall();
+        }
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    private void successfulCall() {
+        circuitBreaker.acquire();
+        circuitBreaker.onComplete(0L);
+    }
+
+    private void failedCall() {
+        circuitBreaker.acquire();
+        circuitBreaker.onError(new IllegalStateException("redis error"));
+        circuitBreaker.onComplete(0L);
+    }
+}
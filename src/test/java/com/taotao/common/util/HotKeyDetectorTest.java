@@ -0,0 +1,85 @@
+package com.taotao.common.util;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class HotKeyDetectorTest {
+
+    @Test
+    public void reportsTopReadAndWriteKeys() {
+        HotKeyDetector detector = new HotKeyDetector(2, 60);
+        record(detector, "a", 10, true);
+        record(detector, "b", 30, true);
+        record(detector, "c", 20, true);
+        record(detector, "w", 5, false);
+        detector.report();
+
+        List<HotKeyDetector.HotKey> reads = detector.getTopReadKeys();
+        assertEquals(2, reads.size());
+        assertEquals("b", reads.get(0).getKey());
+        assertEquals(30L, reads.get(0).getCount());
+        assertEquals("c", reads.get(1).getKey());
+        assertEquals("w", detector.getTopWriteKeys().get(0).getKey());
+    }
+
+    @Test
+    public void lateHotKeyReplacesColdCandidates() {
+        HotKeyDetector detector = new HotKeyDetector(2, 60);
+        // 候选集容量为k*8，先用只出现一次的key填满
+        for (int i = 0; i < 100; i++) {
+            detector.recordRead("cold" + i);
+        }
+        record(detector, "hot", 50, true);
+        record(detector, "warm", 30, true);
+        detector.report();
+
+        List<HotKeyDetector.HotKey> reads = detector.getTopReadKeys();
+        assertEquals("hot", reads.get(0).getKey());
+        assertEquals("warm", reads.get(1).getKey());
+    }
+
+    @Test
+    public void countsResetEachInterval() {
+        HotKeyDetector detector = new HotKeyDetector(1, 60);
+        record(detector, "a", 10, true);
+        detector.report();
+        detector.report();
+        assertEquals(0, detector.getTopReadKeys().size());
+    }
+
+    @Test
+    public void promotesKeysAboveThreshold() {
+        HotKeyDetector detector = new HotKeyDetector(2, 60);
+        detector.setPromoteThreshold(20);
+        detector.start();
+        try {
+            record(detector, "hot", 25, true);
+            record(detector, "cool", 5, true);
+            detector.report();
+            assertNotNull(detector.promoted("hot"));
+            assertNull(detector.promoted("cool"));
+
+            NearCache promoted = detector.promoted("hot");
+            promoted.put("hot", "value", promoted.generation("hot"));
+            detector.recordWrite("hot");
+            assertNull(detector.promoted("hot").get("hot"));
+        } finally {
+            detector.stop();
+        }
+    }
+
+    private static void record(HotKeyDetector detector, String key, int times, boolean read) {
+        for (int i = 0; i < times; i++) {
+            if (read) {
+                detector.recordRead(key);
+            } else {
+                detector.recordWrite(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.taotao.common.util;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NearCacheTest {
+
+    private final NearCache nearCache = new NearCache(100, 60);
+
+    @Test
+    public void fillsWhenNoInvalidationHappened() {
+        long generation = nearCache.generation("key");
+        nearCache.put("key", "value", generation);
+        assertEquals("value", nearCache.get("key"));
+    }
+
+    @Test
+    public void skipsFillAfterConcurrentInvalidation() {
+        long generation = nearCache.generation("key");
+        // 读取Redis期间其他线程写入并失效了key
+        nearCache.invalidate("key");
+        nearCache.put("key", "stale", generation);
+        nearCache.hput("key", "field", "stale", generation);
+        nearCache.sput("key", Collections.singleton("stale"), generation);
+        assertNull(nearCache.get("key"));
+        assertNull(nearCache.hget("key", "field"));
+        assertNull(nearCache.smembers("key"));
+    }
+
+    @Test
+    public void invalidateAllSkipsPendingFills() {
+        long generation = nearCache.generation("key");
+        nearCache.invalidateAll();
+        nearCache.put("key", "stale", generation);
+        assertNull(nearCache.get("key"));
+    }
+}
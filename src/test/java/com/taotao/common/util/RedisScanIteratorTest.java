@@ -0,0 +1,80 @@
+package com.taotao.common.util;
+
+import org.junit.Test;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class RedisScanIteratorTest {
+
+    @Test
+    public void iteratesAllPagesOfAllShards() {
+        // 分片0两页，分片1一页（空页也要继续读取下一页）
+        RedisScanIterator<String> iterator = new RedisScanIterator<String>(2, (shard, cursor) -> {
+            if (shard == 0) {
+                return ScanParams.SCAN_POINTER_START.equals(cursor)
+                        ? new ScanResult<String>("7", Arrays.asList("a", "b"))
+                        : new ScanResult<String>(ScanParams.SCAN_POINTER_START, Collections.singletonList("c"));
+            }
+            return ScanParams.SCAN_POINTER_START.equals(cursor)
+                    ? new ScanResult<String>("3", Collections.<String>emptyList())
+                    : new ScanResult<String>(ScanParams.SCAN_POINTER_START, Collections.singletonList("d"));
+        });
+        List<String> values = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            values.add(iterator.next());
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d"), values);
+    }
+
+    @Test
+    public void readsPagesLazily() {
+        final List<String> reads = new ArrayList<String>();
+        RedisScanIterator<String> iterator = new RedisScanIterator<String>(1, (shard, cursor) -> {
+            reads.add(cursor);
+            return new ScanResult<String>("1".equals(cursor) ? ScanParams.SCAN_POINTER_START : "1", Collections.singletonList(cursor));
+        });
+        assertEquals(ScanParams.SCAN_POINTER_START, iterator.next());
+        assertEquals(1, reads.size());
+        assertEquals(Collections.singletonList("1"), iterator.stream().collect(Collectors.toList()));
+        assertEquals(Arrays.asList("0", "1"), reads);
+    }
+
+    @Test
+    public void failedPageIsReportedNotTruncated() {
+        RedisScanIterator<String> iterator = new RedisScanIterator<String>(2, (shard, cursor) ->
+                shard == 0 ? new ScanResult<String>(ScanParams.SCAN_POINTER_START, Collections.singletonList("a")) : null);
+        assertEquals("a", iterator.next());
+        for (int i = 0; i < 2; i++) {
+            try {
+                iterator.hasNext();
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+                // 失败后再次调用同样抛出，不会被当作遍历完成
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedNodeCountIsReported() {
+        new RedisScanIterator<String>(-1, (shard, cursor) -> null).hasNext();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void emptyScan() {
+        RedisScanIterator<String> iterator = new RedisScanIterator<String>(1,
+                (shard, cursor) -> new ScanResult<String>(ScanParams.SCAN_POINTER_START, Collections.<String>emptyList()));
+        assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+}
@@ -0,0 +1,78 @@
+package com.taotao.common.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String> singleFlight = new SingleFlight<String>();
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            futures.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "value";
+            })));
+            started.await();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                })));
+            }
+            // 等待其他线程进入等待
+            while (singleFlight.inFlight() != 1) {
+                Thread.sleep(1L);
+            }
+            Thread.sleep(50L);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("value", future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+            assertEquals(0, singleFlight.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharesExceptionsAndAllowsRetry() throws Exception {
+        final IllegalStateException error = new IllegalStateException("load failed");
+        try {
+            singleFlight.execute("key", () -> {
+                throw error;
+            });
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            assertSame(error, e);
+        }
+        assertEquals("retry", singleFlight.execute("key", () -> "retry"));
+    }
+
+    @Test
+    public void differentKeysRunIndependently() throws Exception {
+        assertEquals("a", singleFlight.execute("a", () -> "a"));
+        assertEquals("b", singleFlight.execute("b", () -> "b"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.taotao.common.util;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ValueCompressorTest {
+
+    private final ValueCompressor compressor = new ValueCompressor(64);
+
+    @Test
+    public void keepsValuesBelowThreshold() {
+        byte[] encoded = compressor.encode("short");
+        assertArrayEquals("short".getBytes(Charsets.UTF_8), encoded);
+        assertFalse(ValueCompressor.isCompressed(encoded));
+        assertEquals(0L, compressor.getCompressCount());
+    }
+
+    @Test
+    public void compressesAndRestoresLargeValues() {
+        String value = repeat("订单明细-order-line;", 200);
+        byte[] encoded = compressor.encode(value);
+        assertTrue(ValueCompressor.isCompressed(encoded));
+        assertTrue(encoded.length < value.getBytes(Charsets.UTF_8).length);
+        assertEquals(value, compressor.decode(encoded));
+        assertEquals(1L, compressor.getCompressCount());
+        assertTrue(compressor.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void keepsIncompressibleValuesUncompressed() {
+        StringBuilder sb = new StringBuilder();
+        java.util.Random random = new java.util.Random(1L);
+        for (int i = 0; i < 100; i++) {
+            sb.append((char) ('!' + random.nextInt(90)));
+        }
+        byte[] encoded = compressor.encode(sb.toString());
+        assertFalse(ValueCompressor.isCompressed(encoded));
+        assertEquals(sb.toString(), compressor.decode(encoded));
+    }
+
+    @Test
+    public void decodesLegacyUncompressedValues() {
+        assertEquals("legacy", compressor.decode("legacy".getBytes(Charsets.UTF_8)));
+        assertNull(compressor.decode(null));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsTruncatedCompressedValues() {
+        byte[] encoded = compressor.encode(repeat("abc", 100));
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        compressor.decode(truncated);
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder sb = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
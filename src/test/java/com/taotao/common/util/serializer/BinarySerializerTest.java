@@ -0,0 +1,98 @@
+package com.taotao.common.util.serializer;
+
+import org.junit.Test;
+
+import java.io.InvalidClassException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinarySerializerTest {
+
+    private final BinarySerializer serializer = new BinarySerializer();
+
+    @Test
+    public void roundTripsCompactTypes() {
+        assertEquals("中文value", roundTrip("中文value", String.class));
+        assertArrayEquals(new byte[]{1, 2, 3}, roundTrip(new byte[]{1, 2, 3}, byte[].class));
+        assertEquals(Long.valueOf(Long.MIN_VALUE), roundTrip(Long.MIN_VALUE, Long.class));
+        assertEquals(Integer.valueOf(42), roundTrip(42, Integer.class));
+        assertEquals(Double.valueOf(1.5D), roundTrip(1.5D, Double.class));
+        assertEquals(Float.valueOf(2.5F), roundTrip(2.5F, Float.class));
+        assertEquals(Short.valueOf((short) 7), roundTrip((short) 7, Short.class));
+        assertEquals(Boolean.TRUE, roundTrip(Boolean.TRUE, Boolean.class));
+    }
+
+    @Test
+    public void compactTypesUseFixedSize() {
+        assertEquals(9, serializer.serialize(1L).length);
+        assertEquals(5, serializer.serialize(1).length);
+        assertEquals(2, serializer.serialize(true).length);
+    }
+
+    @Test
+    public void roundTripsDefaultAllowedTypes() {
+        Map<String, Object> value = new HashMap<String, Object>();
+        value.put("list", new ArrayList<Object>(Arrays.asList(1L, "a", new BigDecimal("1.25"))));
+        value.put("date", new Date(0L));
+        value.put("array", new int[]{1, 2});
+        @SuppressWarnings("unchecked")
+        Map<String, Object> result = roundTrip(value, Map.class);
+        assertEquals(value.get("list"), result.get("list"));
+        assertEquals(value.get("date"), result.get("date"));
+        assertArrayEquals((int[]) value.get("array"), (int[]) result.get("array"));
+    }
+
+    @Test
+    public void rejectsClassesNotAllowed() {
+        byte[] bytes = serializer.serialize(new AtomicLong(1L));
+        try {
+            serializer.deserialize(bytes, Object.class);
+            fail("expected rejection");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof InvalidClassException);
+        }
+    }
+
+    @Test
+    public void rejectsCollectionsContainingClassesNotAllowed() {
+        List<Object> value = new ArrayList<Object>(Collections.singletonList(new AtomicLong(1L)));
+        try {
+            serializer.deserialize(serializer.serialize(value), List.class);
+            fail("expected rejection");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof InvalidClassException);
+        }
+    }
+
+    @Test
+    public void allowsConfiguredClassesAndPackages() {
+        serializer.setAllowedClasses(Collections.singletonList("java.util.concurrent.atomic.*"));
+        assertEquals(1L, roundTrip(new AtomicLong(1L), AtomicLong.class).get());
+
+        serializer.setAllowedClasses(Collections.singletonList("java.util.concurrent.atomic.AtomicLong"));
+        assertEquals(2L, roundTrip(new AtomicLong(2L), AtomicLong.class).get());
+        assertTrue(serializer.isAllowed("[Ljava.util.concurrent.atomic.AtomicLong;"));
+        assertTrue(!serializer.isAllowed("java.util.concurrent.atomic.AtomicInteger"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTypeTag() {
+        serializer.deserialize(new byte[]{99, 1}, Object.class);
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type) {
+        return serializer.deserialize(serializer.serialize(value), type);
+    }
+}
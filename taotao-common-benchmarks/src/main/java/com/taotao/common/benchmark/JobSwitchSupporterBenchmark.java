@@ -0,0 +1,60 @@
+package com.taotao.common.benchmark;
+
+import com.google.common.base.Function;
+import com.taotao.common.job.impl.JobRedisCacheKey;
+import com.taotao.common.job.impl.JobSwitchSupporterImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：JobSwitchSupporterImpl.supporter 加锁、执行空任务、释放锁的完整耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobSwitchSupporterBenchmark {
+
+    private static final Function<Integer, Integer> NOOP = new Function<Integer, Integer>() {
+        @Override
+        public Integer apply(Integer input) {
+            return input;
+        }
+    };
+
+    private static final Integer INPUT = 1;
+
+    private RedisSupport redisSupport;
+
+    private JobSwitchSupporterImpl jobSwitchSupporter;
+
+    @Setup
+    public void setup() {
+        redisSupport = new RedisSupport();
+        jobSwitchSupporter = new JobSwitchSupporterImpl();
+        jobSwitchSupporter.setRedisCache(redisSupport.getRedisCache());
+    }
+
+    @TearDown
+    public void tearDown() {
+        redisSupport.close();
+    }
+
+    @Benchmark
+    public Integer supporter() {
+        return jobSwitchSupporter.supporter(JobRedisCacheKey.FETCH_ORDER_CALCULATE, NOOP, INPUT);
+    }
+}
@@ -0,0 +1,82 @@
+package com.taotao.common.benchmark;
+
+import com.taotao.common.NoNullStyle;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：NoNullStyle 格式化典型订单DTO的吞吐
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NoNullStyleBenchmark {
+
+    private final NoNullStyle style = new NoNullStyle();
+
+    private OrderDTO order;
+
+    @Setup
+    public void setup() {
+        order = new OrderDTO();
+        order.orderNo = "SO201607140001";
+        order.status = 3;
+        order.amount = new BigDecimal("1999.00");
+        order.createTime = new Date();
+        order.remark = "";
+        order.items = new ArrayList<OrderItemDTO>();
+        for (int i = 0; i < 5; i++) {
+            OrderItemDTO item = new OrderItemDTO();
+            item.sku = "SKU" + i;
+            item.quantity = i + 1;
+            order.items.add(item);
+        }
+        order.attributes = new HashMap<String, String>();
+        order.attributes.put("channel", "TPL");
+        order.attributes.put("warehouse", "SZ01");
+        order.tags = new String[]{"VIP", "PRESALE"};
+    }
+
+    @Benchmark
+    public String orderToString() {
+        return ToStringBuilder.reflectionToString(order, style);
+    }
+
+    public static class OrderDTO {
+        private String orderNo;
+        private Integer status;
+        private BigDecimal amount;
+        private Date createTime;
+        private Date payTime;
+        private String remark;
+        private List<OrderItemDTO> items;
+        private Map<String, String> attributes;
+        private String[] tags;
+    }
+
+    public static class OrderItemDTO {
+        private String sku;
+        private Integer quantity;
+        private String batchNo;
+    }
+}
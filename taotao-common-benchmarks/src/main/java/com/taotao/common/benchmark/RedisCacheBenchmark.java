@@ -0,0 +1,130 @@
+package com.taotao.common.benchmark;
+
+import com.taotao.common.util.RedisBatch;
+import com.taotao.common.util.RedisCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 功能描述：RedisCache单key读写、多key读取、批量写入及集合写入基准
+ * <p/>
+ * 配合 -prof gc 查看每次调用分配的字节数（gc.alloc.rate.norm）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisCacheBenchmark {
+
+    private static final String KEY_PREFIX = "BENCHMARK:";
+
+    /**
+     * 批量操作的key/元素数量
+     */
+    @Param({"100"})
+    private int size;
+
+    /**
+     * 单个值的长度
+     */
+    @Param({"64"})
+    private int valueLength;
+
+    private RedisSupport redisSupport;
+
+    private RedisCache redisCache;
+
+    private String key;
+
+    private String value;
+
+    private List<String> keys;
+
+    private String[] members;
+
+    @Setup
+    public void setup() {
+        redisSupport = new RedisSupport();
+        redisCache = redisSupport.getRedisCache();
+
+        StringBuilder sb = new StringBuilder(valueLength);
+        for (int i = 0; i < valueLength; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        value = sb.toString();
+        key = KEY_PREFIX + "STRING";
+        redisCache.set(key, value);
+
+        keys = new ArrayList<String>(size);
+        members = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys.add(KEY_PREFIX + "STRING:" + i);
+            members[i] = String.valueOf(i);
+            redisCache.set(keys.get(i), value);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        redisCache.del(key);
+        for (String k : keys) {
+            redisCache.del(k);
+        }
+        redisCache.del(KEY_PREFIX + "LIST");
+        redisCache.del(KEY_PREFIX + "SET");
+        redisSupport.close();
+    }
+
+    @Benchmark
+    public String get() {
+        return redisCache.get(key);
+    }
+
+    @Benchmark
+    public Boolean set() {
+        return redisCache.set(key, value);
+    }
+
+    @Benchmark
+    public Map<String, String> mget() {
+        return redisCache.mget(keys);
+    }
+
+    @Benchmark
+    public List<Object> batchSet() {
+        RedisBatch batch = redisCache.batch();
+        for (String k : keys) {
+            batch.set(k, value, redisCache.getSeconds());
+        }
+        return batch.execute();
+    }
+
+    @Benchmark
+    public Long rpush() {
+        Long result = redisCache.rpushAndGetLength(KEY_PREFIX + "LIST", members);
+        redisCache.del(KEY_PREFIX + "LIST");
+        return result;
+    }
+
+    @Benchmark
+    public Long sadd() {
+        return redisCache.saddAndGetCount(KEY_PREFIX + "SET", members);
+    }
+}
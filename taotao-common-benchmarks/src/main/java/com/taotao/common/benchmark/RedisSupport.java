@@ -0,0 +1,80 @@
+package com.taotao.common.benchmark;
+
+import com.taotao.common.util.RedisCache;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedisPool;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+
+/**
+ * 功能描述：基准测试使用的redis连接
+ * <p/>
+ * 未指定 -Dredis.host 时在本机随机端口启动内嵌redis（embedded-redis），close时停止；
+ * 通过 -Dredis.host / -Dredis.port（默认6379）改用已有的redis。
+ */
+final class RedisSupport {
+
+    private static final String HOST = System.getProperty("redis.host");
+
+    /**
+     * 未指定redis.host时启动的内嵌redis
+     */
+    private final RedisServer embeddedRedis;
+
+    private final JedisPool writeJedisPool;
+
+    private final ShardedJedisPool readShardedJedisPool;
+
+    private final RedisCache redisCache = new RedisCache();
+
+    RedisSupport() {
+        String host = HOST;
+        int port;
+        if (host == null) {
+            host = "127.0.0.1";
+            port = Integer.getInteger("redis.port", freePort());
+            embeddedRedis = new RedisServer(port);
+            embeddedRedis.start();
+        } else {
+            port = Integer.getInteger("redis.port", 6379);
+            embeddedRedis = null;
+        }
+
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(64);
+        config.setMaxIdle(64);
+        writeJedisPool = new JedisPool(config, host, port);
+        readShardedJedisPool = new ShardedJedisPool(config, Collections.singletonList(new JedisShardInfo(host, port)));
+
+        redisCache.setWriteJedisPool(writeJedisPool);
+        redisCache.setReadShardedJedisPool(readShardedJedisPool);
+        redisCache.setIsEnable(true);
+    }
+
+    RedisCache getRedisCache() {
+        return redisCache;
+    }
+
+    void close() {
+        redisCache.destroy();
+        writeJedisPool.destroy();
+        readShardedJedisPool.destroy();
+        if (embeddedRedis != null) {
+            embeddedRedis.stop();
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}